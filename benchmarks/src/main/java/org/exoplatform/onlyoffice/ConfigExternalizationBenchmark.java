@@ -0,0 +1,184 @@
+
+/*
+ * Copyright (C) 2003-2018 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Size and throughput of {@link Config} serialization: legacy format (a string per field, all URLs
+ * included) against the current compact format. Serialized sizes printed on the trial setup. In the compact
+ * format this config takes 316 bytes (without the stream header): 4 bytes of format and flags, 284 bytes of
+ * the document part (with the key) and 28 bytes of the user part.<br>
+ * 
+ * Created by The eXo Platform SAS.
+ * 
+ * @version $Id: ConfigExternalizationBenchmark.java 00000 Oct 16, 2026 $
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigExternalizationBenchmark {
+
+  /** The Constant PLATFORM_URL. */
+  static final String PLATFORM_URL       = "https://intranet.acme.com/portal/rest/onlyoffice/editor";
+
+  /** The Constant DOCUMENTSERVER_URL. */
+  static final String DOCUMENTSERVER_URL = "https://documents.acme.com/";
+
+  /** The format: legacy or compact. */
+  @Param({ "legacy", "compact" })
+  String              format;
+
+  /** The config. */
+  Config              config;
+
+  /** The serialized config. */
+  byte[]              serialized;
+
+  /**
+   * Create a config of a user like the editor service does.
+   *
+   * @param userId the user id
+   * @param key the key
+   * @return the config
+   */
+  static Config createConfig(String userId, String key) {
+    Config.Builder builder = Config.editor(DOCUMENTSERVER_URL,
+                                           "collaboration",
+                                           "/Groups/spaces/marketing/Documents/Quarterly report 2018.xlsx",
+                                           "spreadsheet");
+    builder.author("john");
+    builder.fileType("xlsx");
+    builder.created(Calendar.getInstance());
+    builder.folder("Documents");
+    builder.lang("en");
+    builder.mode("edit");
+    builder.title("Quarterly report 2018.xlsx");
+    builder.userId(userId);
+    builder.userFirstName("John");
+    builder.userLastName("Smith");
+    builder.key(key);
+    builder.generateUrls(PLATFORM_URL);
+    Config config = builder.build();
+    config.open();
+    return config;
+  }
+
+  /**
+   * Write config in the legacy format (as it was before the compact format).
+   *
+   * @param config the config
+   * @param out the out
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static void writeLegacy(Config config, ObjectOutput out) throws IOException {
+    out.writeUTF(config.getWorkspace());
+    out.writeUTF(config.getPath());
+    out.writeUTF(config.getDocumentType());
+    out.writeUTF(config.getDocumentserverUrl());
+    out.writeUTF(config.getDocumentserverJsUrl());
+    out.writeUTF(PLATFORM_URL);
+    out.writeUTF(config.isCreated() ? Config.EMPTY : String.valueOf(config.isOpen()));
+    out.writeUTF(config.getError() != null ? config.getError() : Config.EMPTY);
+    Config.Document document = config.getDocument();
+    out.writeUTF(document.getKey());
+    out.writeUTF(document.getFileType());
+    out.writeUTF(document.getTitle());
+    out.writeUTF(document.getUrl());
+    out.writeUTF(document.getInfo().getAuthor());
+    out.writeUTF(document.getInfo().getCreated());
+    out.writeUTF(document.getInfo().getFolder());
+    Config.Editor editor = config.getEditorConfig();
+    out.writeUTF(editor.getCallbackUrl());
+    out.writeUTF(editor.getLang() != null ? editor.getLang() : Config.NO_LANG);
+    out.writeUTF(editor.getMode());
+    out.writeUTF(editor.getUser().getId());
+    out.writeUTF(editor.getUser().getFirstname());
+    out.writeUTF(editor.getUser().getLastname());
+  }
+
+  /**
+   * Setup.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    config = createConfig("john", "9a7d3c5e-6f1b-3c2a-8e4d-0b1f2a3c4d5e");
+    serialized = serialize();
+    System.out.println("Serialized config (" + format + "): " + serialized.length + " bytes");
+  }
+
+  /**
+   * Serialize the config in the benchmarked format.
+   *
+   * @return the bytes
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Benchmark
+  public byte[] serialize() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    if ("legacy".equals(format)) {
+      writeLegacy(config, out);
+    } else {
+      config.writeExternal(out);
+    }
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Deserialize the config (the compact reader also reads the legacy format).
+   *
+   * @return the config
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws ClassNotFoundException the class not found exception
+   */
+  @Benchmark
+  public Config deserialize() throws IOException, ClassNotFoundException {
+    Config config = new Config();
+    config.readExternal(new ObjectInputStream(new ByteArrayInputStream(serialized)));
+    return config;
+  }
+}
@@ -0,0 +1,585 @@
+
+/*
+ * Copyright (C) 2003-2018 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stand-in of Onlyoffice Document Server for load testing of eXo Platform with the add-on. It plays editing
+ * sessions of documents like the Document Server does for real users: co-editors open the document editor
+ * (the config is requested in eXo), the document content is fetched, users join and leave with "being
+ * edited" (1) statuses, and finally the document is saved (2), closed without changes (4) or saving fails
+ * (3). The edited document is served by the simulator for downloading by eXo, it also answers "info"
+ * command of the command service. Latency percentiles are reported for each endpoint.<br>
+ * 
+ * eXo should be configured with the simulator as the Document Server (onlyoffice.documentserver.host), its
+ * users should exist with the same password. Run it with:
+ * 
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar org.exoplatform.onlyoffice.DocumentServerSimulator \
+ *   --exo http://localhost:8080/portal --port 8090 --users john,mary,james --password gtn \
+ *   --workspace collaboration --documents "/Users/j___/john/Private/Documents/Report.docx,..." \
+ *   --editors 3 --threads 10 --rounds 5 --think 500
+ * </pre>
+ * 
+ * Created by The eXo Platform SAS.
+ * 
+ * @version $Id: DocumentServerSimulator.java 00000 Oct 16, 2026 $
+ */
+public class DocumentServerSimulator {
+
+  /** The Constant FILES_PATH. */
+  static final String FILES_PATH   = "/cache/files/";
+
+  /** The Constant COMMAND_PATH. */
+  static final String COMMAND_PATH = "/coauthoring/CommandService.ashx";
+
+  /**
+   * Editor of a document user as configured by eXo.
+   */
+  static class Editor {
+
+    /** The user id. */
+    final String userId;
+
+    /** The document key. */
+    final String key;
+
+    /** The document content URL. */
+    final String contentUrl;
+
+    /** The callback URL. */
+    final String callbackUrl;
+
+    /**
+     * Instantiates a new editor.
+     *
+     * @param userId the user id
+     * @param key the key
+     * @param contentUrl the content url
+     * @param callbackUrl the callback url
+     */
+    Editor(String userId, String key, String contentUrl, String callbackUrl) {
+      this.userId = userId;
+      this.key = key;
+      this.contentUrl = contentUrl;
+      this.callbackUrl = callbackUrl;
+    }
+  }
+
+  /** The HTTP server. */
+  protected final HttpServer                        server;
+
+  /** The simulator URL. */
+  protected final String                            url;
+
+  /** The eXo Platform URL (with portal container name). */
+  protected final String                            exoUrl;
+
+  /** The password of users. */
+  protected final String                            password;
+
+  /** The think time (in milliseconds) between users actions. */
+  protected final long                              thinkTime;
+
+  /** The rate of editing sessions closed without changes (status 4). */
+  protected final double                            noChangesRate;
+
+  /** The rate of editing sessions with saving error (status 3). */
+  protected final double                            errorRate;
+
+  /** Edited documents for downloading, mapped by file ID. */
+  protected final Map<String, byte[]>               files   = new ConcurrentHashMap<String, byte[]>();
+
+  /** Keys of documents in editing. */
+  protected final Set<String>                       editing = ConcurrentHashMap.newKeySet();
+
+  /** Latencies mapped by endpoint. */
+  protected final Map<String, LatencyStats>         stats   = new ConcurrentHashMap<String, LatencyStats>();
+
+  /**
+   * Instantiates a new Document Server simulator.
+   *
+   * @param host the host name of the simulator (as known to eXo)
+   * @param port the port
+   * @param exoUrl the eXo Platform URL (e.g. http://localhost:8080/portal)
+   * @param password the password of users
+   * @param thinkTime the think time (in milliseconds) between users actions
+   * @param noChangesRate the rate of sessions closed without changes
+   * @param errorRate the rate of sessions with saving error
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public DocumentServerSimulator(String host,
+                                 int port,
+                                 String exoUrl,
+                                 String password,
+                                 long thinkTime,
+                                 double noChangesRate,
+                                 double errorRate)
+      throws IOException {
+    this.url = new StringBuilder("http://").append(host).append(':').append(port).toString();
+    this.exoUrl = exoUrl.endsWith("/") ? exoUrl.substring(0, exoUrl.length() - 1) : exoUrl;
+    this.password = password;
+    this.thinkTime = thinkTime;
+    this.noChangesRate = noChangesRate;
+    this.errorRate = errorRate;
+    this.server = HttpServer.create(new InetSocketAddress(port), 128);
+    this.server.createContext(FILES_PATH, this::serveFile);
+    this.server.createContext(COMMAND_PATH, this::serveCommand);
+    this.server.setExecutor(Executors.newCachedThreadPool());
+  }
+
+  /**
+   * Start the server.
+   */
+  public void start() {
+    server.start();
+  }
+
+  /**
+   * Stop the server.
+   */
+  public void stop() {
+    server.stop(1);
+    ((ExecutorService) server.getExecutor()).shutdownNow();
+    files.clear();
+  }
+
+  /**
+   * Edit given documents concurrently, each by given number of co-editors, for given number of rounds.
+   *
+   * @param workspace the workspace
+   * @param documents the documents paths
+   * @param users the users
+   * @param editors the number of co-editors of a document
+   * @param threads the number of documents edited concurrently
+   * @param rounds the number of editing sessions of each document
+   * @throws InterruptedException the interrupted exception
+   */
+  public void run(String workspace, List<String> documents, List<String> users, int editors, int threads, int rounds)
+      throws InterruptedException {
+    ExecutorService sessions = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> results = new ArrayList<Future<?>>();
+      for (int r = 0; r < rounds; r++) {
+        for (int d = 0; d < documents.size(); d++) {
+          String path = documents.get(d);
+          // each document edited by its own group of users
+          List<String> coEditors = new ArrayList<String>();
+          for (int u = 0; u < editors; u++) {
+            coEditors.add(users.get((d * editors + u) % users.size()));
+          }
+          results.add(sessions.submit(() -> {
+            try {
+              editDocument(workspace, path, coEditors);
+            } catch (Exception e) {
+              System.err.println("Error editing " + path + ": " + e);
+            }
+          }));
+        }
+        // next round when all documents of this one done: eXo saves the document before it can be edited again
+        for (Future<?> res : results) {
+          try {
+            res.get();
+          } catch (Exception e) {
+            // already reported
+          }
+        }
+        results.clear();
+      }
+    } finally {
+      sessions.shutdownNow();
+    }
+  }
+
+  /**
+   * Play an editing session of a document: users open it one by one, edit, then leave one by one and the
+   * last one leaving closes the document.
+   *
+   * @param workspace the workspace
+   * @param path the path
+   * @param users the co-editors
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws ParseException the parse exception
+   * @throws InterruptedException the interrupted exception
+   */
+  protected void editDocument(String workspace, String path, List<String> users) throws IOException,
+                                                                                 ParseException,
+                                                                                 InterruptedException {
+    List<Editor> editors = new ArrayList<Editor>();
+    List<String> joined = new ArrayList<String>();
+    byte[] content = null;
+    for (String userId : users) {
+      Editor editor = openEditor(userId, workspace, path);
+      editors.add(editor);
+      if (content == null) {
+        // the Document Server fetches the content once for all co-editors
+        content = fetchContent(editor);
+        editing.add(editor.key);
+      }
+      joined.add(userId);
+      postStatus(editor, 1, null, joined);
+      think();
+    }
+    think();
+    // users leave, the last one closes the document
+    Editor last = null;
+    while (editors.size() > 1) {
+      Editor editor = editors.remove(editors.size() - 1);
+      joined.remove(editor.userId);
+      postStatus(editor, 1, null, joined);
+      think();
+    }
+    last = editors.get(0);
+    editing.remove(last.key);
+    double scenario = ThreadLocalRandom.current().nextDouble();
+    if (scenario < noChangesRate) {
+      postStatus(last, 4, null, Arrays.asList());
+    } else {
+      String fileId = UUID.randomUUID().toString();
+      files.put(fileId, content);
+      try {
+        postStatus(last, scenario < noChangesRate + errorRate ? 3 : 2, url + FILES_PATH + fileId, Arrays.asList());
+      } finally {
+        // eXo may download the file in background: keep it for a while
+        think();
+        files.remove(fileId);
+      }
+    }
+  }
+
+  /**
+   * Open editor of a document by a user: request its config in eXo.
+   *
+   * @param userId the user id
+   * @param workspace the workspace
+   * @param path the path
+   * @return the editor
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws ParseException the parse exception
+   */
+  protected Editor openEditor(String userId, String workspace, String path) throws IOException, ParseException {
+    StringBuilder configUrl = new StringBuilder(exoUrl).append("/rest/private/onlyoffice/editor/config/").append(workspace);
+    for (String name : path.split("/")) {
+      if (name.length() > 0) {
+        configUrl.append('/').append(encode(name));
+      }
+    }
+    String auth = "Basic " + Base64.getEncoder().encodeToString((userId + ":" + password).getBytes(StandardCharsets.UTF_8));
+    byte[] resp = request("config", "POST", configUrl.toString(), auth, null);
+    JSONObject config = (JSONObject) new JSONParser().parse(new String(resp, StandardCharsets.UTF_8));
+    JSONObject document = (JSONObject) config.get("document");
+    JSONObject editorConfig = (JSONObject) config.get("editorConfig");
+    return new Editor(userId,
+                      (String) document.get("key"),
+                      (String) document.get("url"),
+                      (String) editorConfig.get("callbackUrl"));
+  }
+
+  /**
+   * Fetch document content from eXo.
+   *
+   * @param editor the editor
+   * @return the content
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected byte[] fetchContent(Editor editor) throws IOException {
+    return request("content", "GET", editor.contentUrl, null, null);
+  }
+
+  /**
+   * Post a document status to eXo.
+   *
+   * @param editor the editor of user which action caused the status
+   * @param status the status
+   * @param fileUrl the edited file URL or <code>null</code>
+   * @param users the users editing the document
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @SuppressWarnings("unchecked")
+  protected void postStatus(Editor editor, int status, String fileUrl, List<String> users) throws IOException {
+    JSONObject json = new JSONObject();
+    json.put("key", editor.key);
+    json.put("status", status);
+    if (fileUrl != null) {
+      json.put("url", fileUrl);
+    }
+    JSONArray jsonUsers = new JSONArray();
+    jsonUsers.addAll(users);
+    json.put("users", jsonUsers);
+    JSONArray actions = new JSONArray();
+    JSONObject action = new JSONObject();
+    action.put("type", users.contains(editor.userId) ? 1 : 0);
+    action.put("userid", editor.userId);
+    actions.add(action);
+    json.put("actions", actions);
+    request("status" + status, "POST", editor.callbackUrl, null, json.toJSONString());
+  }
+
+  /**
+   * Request eXo and record its latency.
+   *
+   * @param endpoint the endpoint name for the stats
+   * @param method the method
+   * @param requestUrl the request url
+   * @param auth the authorization header or <code>null</code>
+   * @param body the body to post or <code>null</code>
+   * @return the response content
+   * @throws IOException if request failed or response isn't successful
+   */
+  protected byte[] request(String endpoint, String method, String requestUrl, String auth, String body) throws IOException {
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      HttpURLConnection connection = (HttpURLConnection) new URL(requestUrl).openConnection();
+      connection.setRequestMethod(method);
+      connection.setConnectTimeout(10000);
+      connection.setReadTimeout(120000);
+      if (auth != null) {
+        connection.setRequestProperty("Authorization", auth);
+      }
+      if (body != null) {
+        byte[] data = body.getBytes(StandardCharsets.UTF_8);
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setFixedLengthStreamingMode(data.length);
+        try (OutputStream out = connection.getOutputStream()) {
+          out.write(data);
+        }
+      } else if ("POST".equals(method)) {
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(0);
+      }
+      int code = connection.getResponseCode();
+      if (code != HttpURLConnection.HTTP_OK) {
+        readAll(connection.getErrorStream());
+        throw new IOException(method + " " + requestUrl + " response: " + code);
+      }
+      byte[] resp = readAll(connection.getInputStream());
+      success = true;
+      return resp;
+    } finally {
+      stats(endpoint).record(System.nanoTime() - start, success);
+    }
+  }
+
+  /**
+   * Serve edited file for downloading by eXo.
+   *
+   * @param exchange the exchange
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected void serveFile(HttpExchange exchange) throws IOException {
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      String fileId = exchange.getRequestURI().getPath().substring(FILES_PATH.length());
+      byte[] content = files.get(fileId);
+      if (content != null) {
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.sendResponseHeaders(200, content.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+          out.write(content);
+        }
+        success = true;
+      } else {
+        exchange.sendResponseHeaders(404, -1);
+      }
+    } finally {
+      exchange.close();
+      stats("download").record(System.nanoTime() - start, success);
+    }
+  }
+
+  /**
+   * Answer the command service: "info" command tells is the document in editing.
+   *
+   * @param exchange the exchange
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected void serveCommand(HttpExchange exchange) throws IOException {
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      JSONObject command = (JSONObject) new JSONParser().parse(new InputStreamReader(exchange.getRequestBody(),
+                                                                                    StandardCharsets.UTF_8));
+      String key = (String) command.get("key");
+      int error = "info".equals(command.get("c")) ? (editing.contains(key) ? 0 : 1) : 5;
+      byte[] resp = new StringBuilder("{\"error\":").append(error)
+                                                     .append(",\"key\":\"")
+                                                     .append(key)
+                                                     .append("\"}")
+                                                     .toString()
+                                                     .getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, resp.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(resp);
+      }
+      success = true;
+    } catch (ParseException | ClassCastException e) {
+      exchange.sendResponseHeaders(400, -1);
+    } finally {
+      exchange.close();
+      stats("command").record(System.nanoTime() - start, success);
+    }
+  }
+
+  /**
+   * Print latencies of all endpoints.
+   *
+   * @param out the out
+   */
+  public void report(PrintStream out) {
+    LatencyStats.reportHeader(out);
+    stats.keySet().stream().sorted().forEach(name -> stats.get(name).report(out));
+  }
+
+  /**
+   * Latencies of an endpoint.
+   *
+   * @param endpoint the endpoint
+   * @return the latency stats
+   */
+  protected LatencyStats stats(String endpoint) {
+    return stats.computeIfAbsent(endpoint, LatencyStats::new);
+  }
+
+  /**
+   * Wait the think time of a user.
+   *
+   * @throws InterruptedException the interrupted exception
+   */
+  protected void think() throws InterruptedException {
+    if (thinkTime > 0) {
+      Thread.sleep(thinkTime);
+    }
+  }
+
+  /**
+   * Read stream fully and close it.
+   *
+   * @param in the stream, can be <code>null</code>
+   * @return the bytes
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    if (in != null) {
+      try {
+        byte[] buff = new byte[8192];
+        int r;
+        while ((r = in.read(buff)) != -1) {
+          bytes.write(buff, 0, r);
+        }
+      } finally {
+        in.close();
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Encode a path segment.
+   *
+   * @param name the name
+   * @return the encoded string
+   * @throws UnsupportedEncodingException the unsupported encoding exception
+   */
+  static String encode(String name) throws UnsupportedEncodingException {
+    return URLEncoder.encode(name, "UTF-8").replace("+", "%20");
+  }
+
+  /**
+   * Run the simulator with command line options (see the class doc).
+   *
+   * @param args the arguments
+   * @throws Exception the exception
+   */
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<String, String>();
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+    }
+    List<String> users = Arrays.asList(options.getOrDefault("users", "root").split(","));
+    List<String> documents = Arrays.asList(options.getOrDefault("documents", "").split(","));
+    if (documents.get(0).isEmpty()) {
+      System.err.println("Documents required: --documents /path/1.docx,/path/2.xlsx");
+      System.exit(1);
+    }
+    int editors = Integer.parseInt(options.getOrDefault("editors", "2"));
+    int threads = Integer.parseInt(options.getOrDefault("threads", String.valueOf(documents.size())));
+    int rounds = Integer.parseInt(options.getOrDefault("rounds", "1"));
+
+    DocumentServerSimulator simulator =
+                                      new DocumentServerSimulator(options.getOrDefault("host", "localhost"),
+                                                                  Integer.parseInt(options.getOrDefault("port", "8090")),
+                                                                  options.getOrDefault("exo", "http://localhost:8080/portal"),
+                                                                  options.getOrDefault("password", "gtn"),
+                                                                  Long.parseLong(options.getOrDefault("think", "500")),
+                                                                  Double.parseDouble(options.getOrDefault("noChanges", "0.2")),
+                                                                  Double.parseDouble(options.getOrDefault("errors", "0.05")));
+    simulator.start();
+    long start = System.currentTimeMillis();
+    try {
+      simulator.run(options.getOrDefault("workspace", "collaboration"), documents, users, editors, threads, rounds);
+    } finally {
+      // let eXo download saved documents
+      Thread.sleep(TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault("linger", "5"))));
+      simulator.stop();
+    }
+    System.out.println("Edited " + documents.size() + " documents x " + editors + " editors x " + rounds + " rounds in "
+        + (System.currentTimeMillis() - start) + " ms");
+    simulator.report(System.out);
+  }
+}
@@ -0,0 +1,149 @@
+
+/*
+ * Copyright (C) 2003-2018 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.RepositoryException;
+
+import org.exoplatform.container.configuration.ConfigurationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Opening of editors in {@link OnlyofficeEditorServiceImpl}: first user of a document (new config and
+ * document key), a co-editor of already edited document (copy of the config) and reading an editor by the
+ * document key (as the Document Server callbacks do). Created editors are removed in the same invocation,
+ * thus the cache size stays constant.<br>
+ * 
+ * Created by The eXo Platform SAS.
+ * 
+ * @version $Id: EditorServiceBenchmark.java 00000 Oct 16, 2026 $
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EditorServiceBenchmark {
+
+  /** The Constant SHARED_PATH. */
+  static final String   SHARED_PATH = "/Groups/spaces/marketing/Documents/Quarterly report 2018.xlsx";
+
+  /** Number of users already editing the shared document. */
+  @Param({ "1", "10", "100" })
+  int                   editors;
+
+  /** The service. */
+  InMemoryEditorService service;
+
+  /** The shared document key. */
+  String                key;
+
+  /** The users editing the shared document. */
+  String[]              users;
+
+  /** The counter of opened documents and co-editors. */
+  final AtomicLong      counter     = new AtomicLong();
+
+  /**
+   * Open the shared document by the editors.
+   *
+   * @throws ConfigurationException the configuration exception
+   * @throws OnlyofficeEditorException the onlyoffice editor exception
+   * @throws RepositoryException the repository exception
+   */
+  @Setup(Level.Trial)
+  public void setup() throws ConfigurationException, OnlyofficeEditorException, RepositoryException {
+    service = new InMemoryEditorService(0);
+    users = new String[editors];
+    for (int i = 0; i < editors; i++) {
+      users[i] = "user" + i;
+      key = service.createEditor(users[i], SHARED_PATH).getDocument().getKey();
+    }
+    DocumentStatus status = new DocumentStatus();
+    status.setKey(key);
+    status.setStatus(1L);
+    status.setUsers(users);
+    service.updateDocument(users[0], status);
+  }
+
+  /**
+   * Tear down.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    service.close();
+  }
+
+  /**
+   * Open a new document: the first user creates its editor.
+   *
+   * @return the config
+   * @throws OnlyofficeEditorException the onlyoffice editor exception
+   * @throws RepositoryException the repository exception
+   */
+  @Benchmark
+  public Config createEditorFirstOpen() throws OnlyofficeEditorException, RepositoryException {
+    Config config = service.createEditor("john", "/Users/john/Private/Documents/Draft " + counter.incrementAndGet() + ".docx");
+    service.removeEditors(config);
+    return config;
+  }
+
+  /**
+   * Open the shared document by one more user: the editor is copied from an existing one.
+   *
+   * @return the config
+   * @throws OnlyofficeEditorException the onlyoffice editor exception
+   * @throws RepositoryException the repository exception
+   */
+  @Benchmark
+  public Config createEditorCoEdit() throws OnlyofficeEditorException, RepositoryException {
+    Config config = service.createEditor("guest" + counter.incrementAndGet(), SHARED_PATH);
+    service.removeEditor(config);
+    return config;
+  }
+
+  /**
+   * Read editor of the shared document by its key.
+   *
+   * @return the config
+   * @throws OnlyofficeEditorException the onlyoffice editor exception
+   * @throws RepositoryException the repository exception
+   */
+  @Benchmark
+  public Config getEditorByKey() throws OnlyofficeEditorException, RepositoryException {
+    return service.getEditorByKey(users[ThreadLocalRandom.current().nextInt(users.length)], key);
+  }
+}
@@ -0,0 +1,350 @@
+
+/*
+ * Copyright (C) 2003-2018 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+
+import org.exoplatform.container.configuration.ConfigurationException;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.PropertiesParam;
+import org.exoplatform.services.cache.CacheListener;
+import org.exoplatform.services.cache.CacheService;
+import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.services.organization.MembershipHandler;
+import org.exoplatform.services.organization.OrganizationService;
+import org.exoplatform.services.organization.User;
+import org.exoplatform.services.organization.UserHandler;
+import org.exoplatform.services.organization.UserProfileHandler;
+
+/**
+ * Editor service working with in-memory stand-ins of JCR, organization service and caches, for measuring of
+ * the service code without a portal container. Documents are nt:file nodes with given title, all users exist
+ * and have no profile (thus no language).<br>
+ * 
+ * Created by The eXo Platform SAS.
+ * 
+ * @version $Id: InMemoryEditorService.java 00000 Oct 16, 2026 $
+ */
+public class InMemoryEditorService extends OnlyofficeEditorServiceImpl {
+
+  /** The Constant SCHEMA. */
+  static final String SCHEMA = "https";
+
+  /** The Constant HOST. */
+  static final String HOST   = "intranet.acme.com";
+
+  /**
+   * Cache on a concurrent map, listeners invoked as in a local cache.
+   */
+  static class MapCache implements InvocationHandler {
+
+    /** The entries. */
+    final Map<Serializable, Object>                 entries   = new ConcurrentHashMap<Serializable, Object>();
+
+    /** The listeners. */
+    final CopyOnWriteArrayList<CacheListener<?, ?>> listeners = new CopyOnWriteArrayList<CacheListener<?, ?>>();
+
+    /** The name. */
+    final String                                    name;
+
+    /**
+     * Instantiates a new map cache.
+     *
+     * @param name the name
+     */
+    MapCache(String name) {
+      this.name = name;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+      case "get":
+        return entries.get(args[0]);
+      case "put":
+        entries.put((Serializable) args[0], args[1]);
+        for (CacheListener l : listeners) {
+          l.onPut(null, (Serializable) args[0], args[1]);
+        }
+        return null;
+      case "remove":
+        Object removed = entries.remove(args[0]);
+        if (removed != null) {
+          for (CacheListener l : listeners) {
+            l.onRemove(null, (Serializable) args[0], removed);
+          }
+        }
+        return removed;
+      case "clearCache":
+        entries.clear();
+        for (CacheListener l : listeners) {
+          l.onClearCache(null);
+        }
+        return null;
+      case "addCacheListener":
+        listeners.add((CacheListener<?, ?>) args[0]);
+        return null;
+      case "getName":
+        return name;
+      case "getCacheSize":
+        return entries.size();
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      case "equals":
+        return proxy == args[0];
+      case "toString":
+        return "MapCache " + name;
+      default:
+        return defaultValue(method);
+      }
+    }
+  }
+
+  /**
+   * Create in-memory cache service.
+   *
+   * @return the cache service
+   */
+  static CacheService cacheService() {
+    Map<String, ExoCache<?, ?>> caches = new ConcurrentHashMap<String, ExoCache<?, ?>>();
+    return stub(CacheService.class, (proxy, method, args) -> {
+      if ("getCacheInstance".equals(method.getName())) {
+        return caches.computeIfAbsent((String) args[0], name -> stub(ExoCache.class, new MapCache(name)));
+      }
+      return defaultValue(method);
+    });
+  }
+
+  /**
+   * Create organization service where any user exists and has no profile.
+   *
+   * @return the organization service
+   */
+  static OrganizationService organization() {
+    UserHandler users = stub(UserHandler.class, (proxy, method, args) -> {
+      if ("findUserByName".equals(method.getName())) {
+        String userName = (String) args[0];
+        return stub(User.class, (uproxy, umethod, uargs) -> {
+          switch (umethod.getName()) {
+          case "getUserName":
+            return userName;
+          case "getFirstName":
+            return "First " + userName;
+          case "getLastName":
+            return "Last " + userName;
+          default:
+            return defaultValue(umethod);
+          }
+        });
+      }
+      return defaultValue(method);
+    });
+    UserProfileHandler profiles = stub(UserProfileHandler.class, (proxy, method, args) -> defaultValue(method));
+    MembershipHandler memberships = stub(MembershipHandler.class, (proxy, method, args) -> defaultValue(method));
+    return stub(OrganizationService.class, (proxy, method, args) -> {
+      switch (method.getName()) {
+      case "getUserHandler":
+        return users;
+      case "getUserProfileHandler":
+        return profiles;
+      case "getMembershipHandler":
+        return memberships;
+      default:
+        return defaultValue(method);
+      }
+    });
+  }
+
+  /**
+   * Create configuration of the service.
+   *
+   * @param statusBatchWindow the status batch window in milliseconds
+   * @return the init params
+   */
+  static InitParams params(int statusBatchWindow) {
+    PropertiesParam config = new PropertiesParam();
+    config.setName("editor-configuration");
+    config.setProperty(CONFIG_DS_HOST, "documents.acme.com");
+    config.setProperty(CONFIG_DS_SCHEMA, SCHEMA);
+    config.setProperty(CONFIG_DS_ACCESS_ONLY, "false");
+    config.setProperty(CONFIG_STATUS_BATCH_WINDOW, String.valueOf(statusBatchWindow));
+    // stub nodes have no content to derive keys from
+    config.setProperty(CONFIG_DOCUMENT_KEY_MODE, DOCUMENT_KEY_RANDOM);
+    InitParams params = new InitParams();
+    params.addParameter(config);
+    return params;
+  }
+
+  /**
+   * Stub of given interface.
+   *
+   * @param <T> the type
+   * @param type the type
+   * @param handler the handler
+   * @return the stub
+   */
+  @SuppressWarnings("unchecked")
+  static <T> T stub(Class<T> type, InvocationHandler handler) {
+    return (T) Proxy.newProxyInstance(InMemoryEditorService.class.getClassLoader(), new Class<?>[] { type }, handler);
+  }
+
+  /**
+   * Default value for a method return type.
+   *
+   * @param method the method
+   * @return the object
+   */
+  static Object defaultValue(Method method) {
+    Class<?> type = method.getReturnType();
+    if (type == boolean.class) {
+      return false;
+    } else if (type == int.class) {
+      return 0;
+    } else if (type == long.class) {
+      return 0L;
+    } else if (type.isPrimitive() && type != void.class) {
+      return 0;
+    }
+    return null;
+  }
+
+  /** The document created. */
+  final Calendar created = Calendar.getInstance();
+
+  /**
+   * Instantiates a new in-memory editor service.
+   *
+   * @param statusBatchWindow the status batch window in milliseconds, zero to sync users immediately
+   * @throws ConfigurationException the configuration exception
+   */
+  InMemoryEditorService(int statusBatchWindow) throws ConfigurationException {
+    super(null,
+          null,
+          null,
+          null,
+          organization(),
+          null,
+          cacheService(),
+          new DocumentServerClient(null),
+          new EditorMetrics(),
+          params(statusBatchWindow));
+  }
+
+  /**
+   * Create an editor of the document at given path.
+   *
+   * @param userId the user id
+   * @param path the path
+   * @return the config
+   * @throws OnlyofficeEditorException the onlyoffice editor exception
+   * @throws RepositoryException the repository exception
+   */
+  Config createEditor(String userId, String path) throws OnlyofficeEditorException, RepositoryException {
+    return createEditor(SCHEMA, HOST, userId, "collaboration", path);
+  }
+
+  /**
+   * Remove editor of a user only (other users of the document stay editing).
+   *
+   * @param config the config
+   */
+  void removeEditor(Config config) {
+    String key = config.getDocument().getKey();
+    String userId = config.getEditorConfig().getUser().getId();
+    HashSet<String> users = usersCache.get(key);
+    if (users != null) {
+      HashSet<String> newUsers = new HashSet<String>(users);
+      newUsers.remove(userId);
+      usersCache.put(key, newUsers);
+    }
+    activeCache.remove(editorKey(key, userId));
+  }
+
+  /**
+   * Remove all editors of the document of given config.
+   *
+   * @param config the config
+   */
+  void removeEditors(Config config) {
+    removeEditors(config.getDocument().getKey(), nodePath(config));
+  }
+
+  /**
+   * Stop background threads of the service.
+   */
+  void close() {
+    if (syncExecutor != null) {
+      syncExecutor.shutdownNow();
+    }
+    saveExecutor.shutdownNow();
+    lockExecutor.shutdownNow();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected Node node(String workspace, String path) throws BadParameterException, RepositoryException {
+    String title = path.substring(path.lastIndexOf('/') + 1);
+    Property titleProperty = stub(Property.class, (proxy, method, args) -> {
+      return "getString".equals(method.getName()) ? title : defaultValue(method);
+    });
+    Property createdProperty = stub(Property.class, (proxy, method, args) -> {
+      return "getDate".equals(method.getName()) ? created : defaultValue(method);
+    });
+    Node parent = stub(Node.class, (proxy, method, args) -> {
+      return "getName".equals(method.getName()) ? "Documents" : defaultValue(method);
+    });
+    return stub(Node.class, (proxy, method, args) -> {
+      switch (method.getName()) {
+      case "isNodeType":
+        return "nt:file".equals(args[0]);
+      case "hasProperty":
+        return "exo:title".equals(args[0]);
+      case "getProperty":
+        return "jcr:created".equals(args[0]) ? createdProperty : titleProperty;
+      case "getParent":
+        return parent;
+      case "getName":
+        return title;
+      case "getPath":
+        return path;
+      default:
+        return defaultValue(method);
+      }
+    });
+  }
+}
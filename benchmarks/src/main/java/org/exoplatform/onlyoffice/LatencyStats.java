@@ -0,0 +1,130 @@
+
+/*
+ * Copyright (C) 2003-2018 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencies of requests to an endpoint: count, errors and percentiles.<br>
+ * 
+ * Created by The eXo Platform SAS.
+ * 
+ * @version $Id: LatencyStats.java 00000 Oct 16, 2026 $
+ */
+public class LatencyStats {
+
+  /** The endpoint name. */
+  protected final String name;
+
+  /** The latencies in nanoseconds. */
+  protected long[]       latencies = new long[1024];
+
+  /** The count of requests. */
+  protected int          count;
+
+  /** The count of failed requests. */
+  protected int          errors;
+
+  /**
+   * Instantiates a new latency stats.
+   *
+   * @param name the endpoint name
+   */
+  public LatencyStats(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Record a request.
+   *
+   * @param nanos the latency in nanoseconds
+   * @param success <code>true</code> if request succeeded
+   */
+  public synchronized void record(long nanos, boolean success) {
+    if (count == latencies.length) {
+      latencies = Arrays.copyOf(latencies, count * 2);
+    }
+    latencies[count++] = nanos;
+    if (!success) {
+      errors++;
+    }
+  }
+
+  /**
+   * Gets the count of requests.
+   *
+   * @return the count
+   */
+  public synchronized int getCount() {
+    return count;
+  }
+
+  /**
+   * Gets the count of failed requests.
+   *
+   * @return the errors
+   */
+  public synchronized int getErrors() {
+    return errors;
+  }
+
+  /**
+   * Latency percentiles in milliseconds.
+   *
+   * @param percentiles the percentiles (e.g. 50, 99.9)
+   * @return the latencies in order of given percentiles, zeros if nothing recorded
+   */
+  public double[] percentiles(double... percentiles) {
+    long[] sorted;
+    synchronized (this) {
+      sorted = Arrays.copyOf(latencies, count);
+    }
+    Arrays.sort(sorted);
+    double[] res = new double[percentiles.length];
+    if (sorted.length > 0) {
+      for (int i = 0; i < percentiles.length; i++) {
+        int index = (int) Math.ceil(percentiles[i] / 100 * sorted.length) - 1;
+        res[i] = sorted[Math.max(0, Math.min(index, sorted.length - 1))] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+      }
+    }
+    return res;
+  }
+
+  /**
+   * Print count, errors and latency percentiles (p50, p90, p99, p99.9 and max).
+   *
+   * @param out the out
+   */
+  public void report(PrintStream out) {
+    double[] p = percentiles(50, 90, 99, 99.9, 100);
+    out.printf("%-10s %8d %7d %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, getCount(), getErrors(), p[0], p[1], p[2], p[3], p[4]);
+  }
+
+  /**
+   * Print header of the report.
+   *
+   * @param out the out
+   */
+  public static void reportHeader(PrintStream out) {
+    out.printf("%-10s %8s %7s %9s %9s %9s %9s %9s%n", "endpoint", "requests", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+  }
+}
@@ -0,0 +1,166 @@
+
+/*
+ * Copyright (C) 2003-2018 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.RepositoryException;
+
+import org.exoplatform.container.configuration.ConfigurationException;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Handling of "being edited" (1) statuses sent by the Document Server when users join and leave a co-edited
+ * document: JSON parsing of the status (as the REST service does) and its processing in the editor service,
+ * with users sync on each status or merged in a time window.<br>
+ * 
+ * Created by The eXo Platform SAS.
+ * 
+ * @version $Id: StatusProcessingBenchmark.java 00000 Oct 16, 2026 $
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatusProcessingBenchmark {
+
+  /** The Constant PATH. */
+  static final String   PATH = "/Groups/spaces/marketing/Documents/Quarterly report 2018.xlsx";
+
+  /** Number of users editing the document. */
+  @Param({ "2", "20" })
+  int                   editors;
+
+  /** Time window (in milliseconds) to merge statuses, zero to sync users on each status. */
+  @Param({ "0", "500" })
+  int                   batchWindow;
+
+  /** The service. */
+  InMemoryEditorService service;
+
+  /** Statuses JSON: all users edit, the last user left. */
+  String[]              statusTexts;
+
+  /** Statuses: all users edit, the last user left. */
+  DocumentStatus[]      statuses;
+
+  /** The document key. */
+  String                key;
+
+  /** The invocation counter. */
+  int                   counter;
+
+  /**
+   * Open the document by the editors.
+   *
+   * @throws ConfigurationException the configuration exception
+   * @throws OnlyofficeEditorException the onlyoffice editor exception
+   * @throws RepositoryException the repository exception
+   * @throws ParseException the parse exception
+   */
+  @Setup(Level.Trial)
+  public void setup() throws ConfigurationException, OnlyofficeEditorException, RepositoryException, ParseException {
+    service = new InMemoryEditorService(batchWindow);
+    String[] users = new String[editors];
+    for (int i = 0; i < editors; i++) {
+      users[i] = "user" + i;
+      key = service.createEditor(users[i], PATH).getDocument().getKey();
+    }
+    statusTexts = new String[] { statusText(key, users, users.length), statusText(key, users, users.length - 1) };
+    statuses = new DocumentStatus[statusTexts.length];
+    for (int i = 0; i < statusTexts.length; i++) {
+      statuses[i] = DocumentStatus.parse(statusTexts[i], key);
+    }
+  }
+
+  /**
+   * Tear down.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    service.close();
+  }
+
+  /**
+   * Status JSON as sent by the Document Server.
+   *
+   * @param key the key
+   * @param users the users
+   * @param count the count of users to include
+   * @return the string
+   */
+  @SuppressWarnings("unchecked")
+  static String statusText(String key, String[] users, int count) {
+    JSONObject status = new JSONObject();
+    status.put("key", key);
+    status.put("status", 1L);
+    JSONArray statusUsers = new JSONArray();
+    for (int i = 0; i < count; i++) {
+      statusUsers.add(users[i]);
+    }
+    status.put("users", statusUsers);
+    JSONArray actions = new JSONArray();
+    JSONObject action = new JSONObject();
+    action.put("type", 1L);
+    action.put("userid", users[0]);
+    actions.add(action);
+    status.put("actions", actions);
+    return status.toJSONString();
+  }
+
+  /**
+   * Parse status JSON.
+   *
+   * @return the document status
+   * @throws ParseException the parse exception
+   */
+  @Benchmark
+  public DocumentStatus parseStatus() throws ParseException {
+    return DocumentStatus.parse(statusTexts[counter++ & 1], key);
+  }
+
+  /**
+   * Process a status: the last user leaves or joins again.
+   *
+   * @throws OnlyofficeEditorException the onlyoffice editor exception
+   * @throws RepositoryException the repository exception
+   */
+  @Benchmark
+  public void updateDocument() throws OnlyofficeEditorException, RepositoryException {
+    service.updateDocument("user0", statuses[counter++ & 1]);
+  }
+}
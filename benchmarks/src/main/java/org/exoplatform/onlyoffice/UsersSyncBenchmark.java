@@ -0,0 +1,131 @@
+
+/*
+ * Copyright (C) 2003-2018 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.RepositoryException;
+
+import org.exoplatform.container.configuration.ConfigurationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Users of a co-edited document with large number of editors: sync of users reported by the Document Server
+ * (half of users leave, then join again - every invocation changes editors) and reading of active users (as
+ * for the editor state).<br>
+ * 
+ * Created by The eXo Platform SAS.
+ * 
+ * @version $Id: UsersSyncBenchmark.java 00000 Oct 16, 2026 $
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UsersSyncBenchmark {
+
+  /** The Constant PATH. */
+  static final String               PATH = "/Groups/spaces/marketing/Documents/Quarterly report 2018.xlsx";
+
+  /** Number of users editing the document. */
+  @Param({ "10", "100", "1000" })
+  int                               editors;
+
+  /** The service. */
+  InMemoryEditorService             service;
+
+  /** The document editors. */
+  ConcurrentHashMap<String, Config> configs;
+
+  /** All users. */
+  String[]                          allUsers;
+
+  /** Half of users. */
+  String[]                          halfUsers;
+
+  /** Last sync was of all users. */
+  boolean                           joinAll = true;
+
+  /**
+   * Open the document by the editors.
+   *
+   * @throws ConfigurationException the configuration exception
+   * @throws OnlyofficeEditorException the onlyoffice editor exception
+   * @throws RepositoryException the repository exception
+   */
+  @Setup(Level.Trial)
+  public void setup() throws ConfigurationException, OnlyofficeEditorException, RepositoryException {
+    service = new InMemoryEditorService(0);
+    allUsers = new String[editors];
+    String key = null;
+    for (int i = 0; i < editors; i++) {
+      allUsers[i] = "user" + i;
+      key = service.createEditor(allUsers[i], PATH).getDocument().getKey();
+    }
+    halfUsers = Arrays.copyOf(allUsers, Math.max(1, editors / 2));
+    configs = service.activeEditors(key);
+    service.syncUsers(configs, allUsers);
+  }
+
+  /**
+   * Tear down.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    service.close();
+  }
+
+  /**
+   * Sync users: half of them leave or join again.
+   *
+   * @return true, if editors changed
+   */
+  @Benchmark
+  public boolean syncUsers() {
+    joinAll = !joinAll;
+    return service.syncUsers(configs, joinAll ? allUsers : halfUsers);
+  }
+
+  /**
+   * Read active users of the document.
+   *
+   * @return the users
+   */
+  @Benchmark
+  public String[] getActiveUsers() {
+    return service.getActiveUsers(configs);
+  }
+}
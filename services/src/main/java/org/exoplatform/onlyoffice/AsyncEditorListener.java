@@ -0,0 +1,329 @@
+
+/*
+ * Copyright (C) 2003-2018 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.container.component.RequestLifeCycle;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.services.security.ConversationState;
+
+/**
+ * Delivers editor events to a listener in a dedicated thread, thus a slow listener will not delay requests of
+ * users or the Document Server. Events wait for the delivery in a bounded queue in order of their firing, so
+ * events of the same document reach the listener in the same order as they happened. When the queue is full,
+ * the firing thread waits for a free place (back-pressure) up to given timeout, then the event will be
+ * dropped.<br>
+ * 
+ * The listener is invoked in the container and with the conversation state of the thread fired the event,
+ * each event in its own request lifecycle. Note that the listener gets the same {@link Config} instance as
+ * used by the editor service, its state may already change when the event will be delivered.<br>
+ * 
+ * Created by The eXo Platform SAS.
+ * 
+ * @version $Id: AsyncEditorListener.java 00000 Oct 16, 2026 $
+ */
+public class AsyncEditorListener implements OnlyofficeEditorListener {
+
+  /** The Constant LOG. */
+  protected static final Log           LOG           = ExoLogger.getLogger(AsyncEditorListener.class);
+
+  /** The Constant THREAD_NUMBER. */
+  protected static final AtomicInteger THREAD_NUMBER = new AtomicInteger(1);
+
+  /**
+   * Event of the listener.
+   */
+  protected class Event implements Runnable {
+
+    /** The name. */
+    protected final String            name;
+
+    /** The config. */
+    protected final Config            config;
+
+    /** The handler. */
+    protected final Consumer<Config>  handler;
+
+    /** The container of the thread fired the event. */
+    protected final ExoContainer      container;
+
+    /** The conversation state of the thread fired the event. */
+    protected final ConversationState state;
+
+    /**
+     * Instantiates a new event in the current container and conversation state.
+     *
+     * @param name the name
+     * @param config the config
+     * @param handler the handler
+     */
+    protected Event(String name, Config config, Consumer<Config> handler) {
+      this.name = name;
+      this.config = config;
+      this.handler = handler;
+      this.container = ExoContainerContext.getCurrentContainerIfPresent();
+      this.state = ConversationState.getCurrent();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+      ExoContainer previousContainer = ExoContainerContext.getCurrentContainerIfPresent();
+      ConversationState previousState = ConversationState.getCurrent();
+      if (container != null) {
+        ExoContainerContext.setCurrentContainer(container);
+        RequestLifeCycle.begin(container);
+      }
+      ConversationState.setCurrent(state);
+      try {
+        handler.accept(config);
+        delivered.incrementAndGet();
+      } catch (Throwable t) {
+        failed.incrementAndGet();
+        LOG.warn("Editor listener error on " + name + " of " + config.getDocument().getKey(), t);
+      } finally {
+        ConversationState.setCurrent(previousState);
+        if (container != null) {
+          RequestLifeCycle.end();
+          ExoContainerContext.setCurrentContainer(previousContainer);
+        }
+      }
+    }
+  }
+
+  /**
+   * Waits for a free place in the queue when it's full, drops the event after the timeout.
+   */
+  protected class QueueWaitPolicy implements RejectedExecutionHandler {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+      Event event = (Event) r;
+      if (!executor.isShutdown()) {
+        delayed.incrementAndGet();
+        try {
+          if (executor.getQueue().offer(r, queueTimeout, TimeUnit.MILLISECONDS)) {
+            return;
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      if (dropped.getAndIncrement() == 0 || LOG.isDebugEnabled()) {
+        LOG.warn("Editor listener queue is full, event " + event.name + " of " + event.config.getDocument().getKey()
+            + " dropped for " + listener);
+      }
+    }
+  }
+
+  /** The listener. */
+  protected final OnlyofficeEditorListener listener;
+
+  /** The executor with single thread. */
+  protected final ThreadPoolExecutor       executor;
+
+  /** Time (in milliseconds) to wait for a free place in the queue. */
+  protected final long                     queueTimeout;
+
+  /** Number of delivered events. */
+  protected final AtomicLong               delivered = new AtomicLong();
+
+  /** Number of events that waited for a free place in the queue. */
+  protected final AtomicLong               delayed   = new AtomicLong();
+
+  /** Number of events dropped because the queue was full. */
+  protected final AtomicLong               dropped   = new AtomicLong();
+
+  /** Number of events failed in the listener. */
+  protected final AtomicLong               failed    = new AtomicLong();
+
+  /**
+   * Instantiates a new asynchronous editor listener.
+   *
+   * @param listener the listener
+   * @param queueSize the capacity of events queue
+   * @param queueTimeout the time (in milliseconds) to wait for a free place in the queue
+   */
+  public AsyncEditorListener(OnlyofficeEditorListener listener, int queueSize, long queueTimeout) {
+    this.listener = listener;
+    this.queueTimeout = queueTimeout;
+    // Single thread delivers the events in order of their firing. The thread is core and doesn't time out,
+    // otherwise an event offered to the queue by the wait policy could stay without a thread.
+    this.executor = new ThreadPoolExecutor(1,
+                                           1,
+                                           0L,
+                                           TimeUnit.MILLISECONDS,
+                                           new ArrayBlockingQueue<Runnable>(queueSize),
+                                           new ThreadFactory() {
+                                             @Override
+                                             public Thread newThread(Runnable r) {
+                                               Thread t = new Thread(r,
+                                                                     "onlyoffice-listener-"
+                                                                         + THREAD_NUMBER.getAndIncrement());
+                                               t.setDaemon(true);
+                                               return t;
+                                             }
+                                           },
+                                           new QueueWaitPolicy());
+    this.executor.prestartCoreThread();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onCreate(Config config) {
+    executor.execute(new Event("create", config, listener::onCreate));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onGet(Config config) {
+    executor.execute(new Event("get", config, listener::onGet));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onJoined(Config config) {
+    executor.execute(new Event("joined", config, listener::onJoined));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onLeaved(Config config) {
+    executor.execute(new Event("leaved", config, listener::onLeaved));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onSaved(Config config) {
+    executor.execute(new Event("saved", config, listener::onSaved));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onError(Config config) {
+    executor.execute(new Event("error", config, listener::onError));
+  }
+
+  /**
+   * Stop the delivery: already queued events will be delivered, new ones will be dropped.
+   *
+   * @param timeout the time (in milliseconds) to wait for delivery of queued events
+   * @return <code>true</code> if all queued events delivered, <code>false</code> otherwise
+   */
+  public boolean shutdown(long timeout) {
+    executor.shutdown();
+    try {
+      return executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Gets the listener.
+   *
+   * @return the listener
+   */
+  public OnlyofficeEditorListener getListener() {
+    return listener;
+  }
+
+  /**
+   * Gets the number of delivered events.
+   *
+   * @return the delivered
+   */
+  public long getDelivered() {
+    return delivered.get();
+  }
+
+  /**
+   * Gets the number of events that waited for a free place in the queue.
+   *
+   * @return the delayed
+   */
+  public long getDelayed() {
+    return delayed.get();
+  }
+
+  /**
+   * Gets the number of events dropped because the queue was full.
+   *
+   * @return the dropped
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  /**
+   * Gets the number of events failed in the listener.
+   *
+   * @return the failed
+   */
+  public long getFailed() {
+    return failed.get();
+  }
+
+  /**
+   * Gets the number of events waiting for delivery.
+   *
+   * @return the queued
+   */
+  public int getQueued() {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "async " + listener;
+  }
+}
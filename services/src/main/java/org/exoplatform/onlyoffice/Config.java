@@ -20,6 +20,8 @@ package org.exoplatform.onlyoffice;
 
 import org.exoplatform.onlyoffice.webui.OnlyofficeEditorUIService;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
@@ -31,7 +33,10 @@ import javax.jcr.Node;
 
 /**
  * Onlyoffice editor config for its JS API. <br>
- * This class implements {@link Externalizable} for serialization in eXo cache (actual in cluster).
+ * This class implements {@link Externalizable} for serialization in eXo cache (actual in cluster). The
+ * serialized form starts with a version marker, the document part goes first and the user part after it, URLs
+ * that can be generated from platform URL, user and document key are not written. Configs serialized by
+ * previous versions (without the marker) also can be read.
  * 
  * Created by The eXo Platform SAS.
  * 
@@ -49,6 +54,30 @@ public class Config implements Externalizable {
   /** The Constant EMPTY. */
   protected static final String           EMPTY           = "".intern();
 
+  /** The Constant FORMAT_MARKER, it cannot be a length of a workspace name in legacy format. */
+  protected static final int              FORMAT_MARKER   = 0xFFFF;
+
+  /** The Constant FORMAT_VERSION. */
+  protected static final int              FORMAT_VERSION  = 1;
+
+  /** The Constant FLAG_OPEN_SET: open state defined. */
+  protected static final int              FLAG_OPEN_SET   = 1;
+
+  /** The Constant FLAG_OPEN: editor open. */
+  protected static final int              FLAG_OPEN       = 1 << 1;
+
+  /** The Constant FLAG_ERROR: error written. */
+  protected static final int              FLAG_ERROR      = 1 << 2;
+
+  /** The Constant FLAG_LANG: language written. */
+  protected static final int              FLAG_LANG       = 1 << 3;
+
+  /** The Constant FLAG_URLS: file and callback URLs not written, they will be generated. */
+  protected static final int              FLAG_URLS       = 1 << 4;
+
+  /** The Constant FLAG_JS_URL: Document Server JS URL not written, it will be generated. */
+  protected static final int              FLAG_JS_URL     = 1 << 5;
+
   /**
    * The Class Builder.
    */
@@ -736,6 +765,44 @@ public class Config implements Externalizable {
     return new StringBuilder(platformUrl).append("/status/").append(userId).append("/").append(key).toString();
   }
 
+  /**
+   * Document Server JS API url.
+   *
+   * @param documentserverUrl the documentserver url
+   * @return the string
+   */
+  protected static String documentserverJsUrl(String documentserverUrl) {
+    return new StringBuilder(documentserverUrl).append("apps/api/documents/api.js").toString();
+  }
+
+  /**
+   * Read a string in modified UTF-8 which length already read from the input.
+   *
+   * @param in the input
+   * @param length the length of encoded string
+   * @return the string
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected static String readUTF(ObjectInput in, int length) throws IOException {
+    byte[] bytes = new byte[length + 2];
+    bytes[0] = (byte) (length >>> 8);
+    bytes[1] = (byte) length;
+    in.readFully(bytes, 2, length);
+    return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+  }
+
+  /**
+   * Read a string shared by configs of the same document (or all documents): it will be interned to keep a
+   * single copy in memory.
+   *
+   * @param in the input
+   * @return the string
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected static String readShared(ObjectInput in) throws IOException {
+    return in.readUTF().intern();
+  }
+
   /** The documentserver js url. */
   private String         documentserverUrl, documentserverJsUrl;
 
@@ -805,7 +872,7 @@ public class Config implements Externalizable {
     this.path = path;
     this.documentType = documentType;
     this.documentserverUrl = documentserverUrl;
-    this.documentserverJsUrl = new StringBuilder(documentserverUrl).append("apps/api/documents/api.js").toString();
+    this.documentserverJsUrl = documentserverJsUrl(documentserverUrl);
 
     this.platformUrl = platformUrl;
 
@@ -818,35 +885,69 @@ public class Config implements Externalizable {
    */
   @Override
   public void writeExternal(ObjectOutput out) throws IOException {
-    // Strings
+    String key = document.getKey();
+    String userId = editorConfig.getUser().getId();
+    String lang = editorConfig.getLang();
+    int flags = 0;
+    if (open != null) {
+      flags |= FLAG_OPEN_SET;
+      if (open.booleanValue()) {
+        flags |= FLAG_OPEN;
+      }
+    }
+    if (error != null) {
+      flags |= FLAG_ERROR;
+    }
+    if (lang != null) {
+      flags |= FLAG_LANG;
+    }
+    if (platformUrl != null && fileUrl(platformUrl, userId, key).equals(document.getUrl())
+        && callbackUrl(platformUrl, userId, key).equals(editorConfig.getCallbackUrl())) {
+      flags |= FLAG_URLS;
+    }
+    if (documentserverJsUrl(documentserverUrl).equals(documentserverJsUrl)) {
+      flags |= FLAG_JS_URL;
+    }
+
+    out.writeShort(FORMAT_MARKER);
+    out.writeByte(FORMAT_VERSION);
+    out.writeByte(flags);
+    // Note: closing state isn't replicable
+
+    // Document part, the same for all users of the document. It's written in each config: a config is
+    // a separate entry of the editors cache, and a document entry referenced by users configs would add a
+    // cache operation per change and would not be consistent with them under eviction and asynchronous
+    // replication. See ConfigExternalizationBenchmark for sizes of the parts.
+    out.writeUTF(key);
     out.writeUTF(workspace);
     out.writeUTF(path);
     out.writeUTF(documentType);
-    out.writeUTF(documentserverUrl);
-    out.writeUTF(documentserverJsUrl);
-    out.writeUTF(platformUrl);
-    out.writeUTF(open != null ? open.toString() : EMPTY);
-    // Note: closing state isn't replicable
-    out.writeUTF(error != null ? error : EMPTY);
-
-    // Objects
-    // Document: key, fileType, title, url, info(author, created, folder)
-    out.writeUTF(document.getKey());
     out.writeUTF(document.getFileType());
     out.writeUTF(document.getTitle());
-    out.writeUTF(document.getUrl());
     out.writeUTF(document.getInfo().getAuthor());
     out.writeUTF(document.getInfo().getCreated());
     out.writeUTF(document.getInfo().getFolder());
-
-    // Editor: callbackUrl, lang, mode, user(userId, firstname, lastname)
-    out.writeUTF(editorConfig.getCallbackUrl());
-    String elang = editorConfig.getLang();
-    out.writeUTF(elang != null ? elang : NO_LANG);
     out.writeUTF(editorConfig.getMode());
-    out.writeUTF(editorConfig.getUser().getId());
+    out.writeUTF(documentserverUrl);
+    if ((flags & FLAG_JS_URL) == 0) {
+      out.writeUTF(documentserverJsUrl);
+    }
+    out.writeUTF(platformUrl != null ? platformUrl : EMPTY);
+
+    // User part
+    out.writeUTF(userId);
     out.writeUTF(editorConfig.getUser().getFirstname());
     out.writeUTF(editorConfig.getUser().getLastname());
+    if (lang != null) {
+      out.writeUTF(lang);
+    }
+    if (error != null) {
+      out.writeUTF(error);
+    }
+    if ((flags & FLAG_URLS) == 0) {
+      out.writeUTF(document.getUrl());
+      out.writeUTF(editorConfig.getCallbackUrl());
+    }
   }
 
   /**
@@ -854,8 +955,85 @@ public class Config implements Externalizable {
    */
   @Override
   public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    int marker = in.readUnsignedShort();
+    if (marker == FORMAT_MARKER) {
+      int version = in.readUnsignedByte();
+      if (version != FORMAT_VERSION) {
+        throw new IOException("Unsupported config format version: " + version);
+      }
+      readCompact(in);
+    } else {
+      // it's a length of workspace name in legacy format
+      readLegacy(in, readUTF(in, marker));
+    }
+  }
+
+  /**
+   * Read config in compact format.
+   *
+   * @param in the input
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected void readCompact(ObjectInput in) throws IOException {
+    int flags = in.readUnsignedByte();
+    if ((flags & FLAG_OPEN_SET) != 0) {
+      open = Boolean.valueOf((flags & FLAG_OPEN) != 0);
+      closing = Boolean.FALSE;
+    } else {
+      open = closing = null;
+    }
+
+    // Document part
+    String dkey = readShared(in);
+    this.workspace = readShared(in);
+    this.path = readShared(in);
+    this.documentType = readShared(in);
+    String dfileType = readShared(in);
+    String dtitle = readShared(in);
+    String diauthor = readShared(in);
+    String dicreated = readShared(in);
+    String difolder = readShared(in);
+    String emode = readShared(in);
+    this.documentserverUrl = readShared(in);
+    if ((flags & FLAG_JS_URL) != 0) {
+      this.documentserverJsUrl = documentserverJsUrl(documentserverUrl).intern();
+    } else {
+      this.documentserverJsUrl = readShared(in);
+    }
+    String platformUrl = readShared(in);
+    this.platformUrl = EMPTY.equals(platformUrl) ? null : platformUrl;
+
+    // User part
+    String euid = in.readUTF();
+    String eufirstname = in.readUTF();
+    String eulastname = in.readUTF();
+    String elang = (flags & FLAG_LANG) != 0 ? readShared(in) : null;
+    this.error = (flags & FLAG_ERROR) != 0 ? in.readUTF() : null;
+    String durl, ecallbackUrl;
+    if ((flags & FLAG_URLS) != 0) {
+      durl = fileUrl(this.platformUrl, euid, dkey);
+      ecallbackUrl = callbackUrl(this.platformUrl, euid, dkey);
+    } else {
+      durl = in.readUTF();
+      ecallbackUrl = in.readUTF();
+    }
+
+    Document.Info dinfo = new Document.Info(diauthor, dicreated, difolder);
+    this.document = new Document(dkey, dfileType, dtitle, durl, dinfo, new Document.EditPermissions());
+    Editor.User euser = new Editor.User(euid, eufirstname, eulastname);
+    this.editorConfig = new Editor(ecallbackUrl, elang, emode, euser);
+  }
+
+  /**
+   * Read config in legacy format (without version marker), its first string (workspace) already read.
+   *
+   * @param in the input
+   * @param workspace the workspace
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected void readLegacy(ObjectInput in, String workspace) throws IOException {
     // Strings
-    this.workspace = in.readUTF();
+    this.workspace = workspace;
     this.path = in.readUTF();
     this.documentType = in.readUTF();
     this.documentserverUrl = in.readUTF();
@@ -19,7 +19,10 @@
  */
 package org.exoplatform.onlyoffice;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Calendar;
 
 /**
  * Created by The eXo Platform SAS.
@@ -36,11 +39,44 @@ public abstract class DocumentContent {
   }
 
   /**
-   * Actual document content. 
+   * Actual document content. The stream should be closed by a consumer.
    * 
    * @return {@link InputStream}
    */
   public abstract InputStream getData();
+
+  /**
+   * Transfer the content, or its range, to given stream by the content storage, without copying it through
+   * the Java heap (e.g. from a file by its channel). This implementation doesn't support the transfer, then
+   * a consumer should read {@link #getData()}.
+   *
+   * @param output the output stream
+   * @param offset the offset of the range
+   * @param length the length of the range, <code>-1</code> means till end of the content
+   * @return the number of transferred bytes or <code>-1</code> if the transfer not supported
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public long transfer(OutputStream output, long offset, long length) throws IOException {
+    return -1;
+  }
+
+  /**
+   * Document content length in bytes.
+   *
+   * @return the length or <code>-1</code> if it's not known
+   */
+  public long getLength() {
+    return -1;
+  }
+
+  /**
+   * Date of last modification of the document content.
+   *
+   * @return {@link Calendar} or <code>null</code> if it's not known
+   */
+  public Calendar getLastModified() {
+    return null;
+  }
   
   /**
    * Document MIME type.
@@ -0,0 +1,432 @@
+
+/*
+ * Copyright (C) 2003-2018 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.exoplatform.container.configuration.ConfigurationException;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.PropertiesParam;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+/**
+ * HTTP client for requests to Onlyoffice Document Server. It reuses persistent (keep-alive) connections of
+ * the JVM: response streams are read to the end and closed, but connections are not disconnected. Requests
+ * have connect and read timeouts and a number of concurrent requests to the same host is limited.<br>
+ * 
+ * Created by The eXo Platform SAS.
+ * 
+ * @version $Id: DocumentServerClient.java 00000 Oct 16, 2026 $
+ */
+public class DocumentServerClient {
+
+  /**
+   * Reader of Document Server response content.
+   *
+   * @param <T> the result type
+   */
+  public interface ResponseReader<T> {
+
+    /**
+     * Read response content. The content stream will be closed by the client.
+     *
+     * @param data the content stream
+     * @param length the content length, <code>-1</code> if not known
+     * @return the result
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws OnlyofficeEditorException if content not acceptable
+     */
+    T read(InputStream data, long length) throws IOException, OnlyofficeEditorException;
+  }
+
+  /**
+   * Input stream counting read bytes.
+   */
+  protected class CountingInputStream extends FilterInputStream {
+
+    /**
+     * Instantiates a new counting input stream.
+     *
+     * @param in the in
+     */
+    protected CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b != -1) {
+        bytesRead.incrementAndGet();
+      }
+      return b;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int r = super.read(b, off, len);
+      if (r > 0) {
+        bytesRead.addAndGet(r);
+      }
+      return r;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+      // don't close the connection stream here, the client will drain and close it
+    }
+  }
+
+  /** The Constant CONFIG_CONNECT_TIMEOUT (in milliseconds). */
+  public static final String                           CONFIG_CONNECT_TIMEOUT   = "connect-timeout";
+
+  /** The Constant CONFIG_READ_TIMEOUT (in milliseconds). */
+  public static final String                           CONFIG_READ_TIMEOUT      = "read-timeout";
+
+  /** The Constant CONFIG_HOST_CONNECTIONS. */
+  public static final String                           CONFIG_HOST_CONNECTIONS  = "max-host-connections";
+
+  /** The Constant CONFIG_ACQUIRE_TIMEOUT (in milliseconds). */
+  public static final String                           CONFIG_ACQUIRE_TIMEOUT   = "acquire-timeout";
+
+  /** The Constant CONNECT_TIMEOUT_DEFAULT. */
+  protected static final int                           CONNECT_TIMEOUT_DEFAULT  = 10000;
+
+  /** The Constant READ_TIMEOUT_DEFAULT. */
+  protected static final int                           READ_TIMEOUT_DEFAULT     = 120000;
+
+  /** The Constant HOST_CONNECTIONS_DEFAULT. */
+  protected static final int                           HOST_CONNECTIONS_DEFAULT = 8;
+
+  /** The Constant ACQUIRE_TIMEOUT_DEFAULT. */
+  protected static final int                           ACQUIRE_TIMEOUT_DEFAULT  = 60000;
+
+  /** The Constant HOSTS_LIMIT: permits of idle hosts will be forgotten when more hosts requested. */
+  protected static final int                           HOSTS_LIMIT              = 16;
+
+  /** The Constant DRAIN_LIMIT: a rest of response larger of this will not be read to reuse the connection. */
+  protected static final int                           DRAIN_LIMIT              = 64 * 1024;
+
+  /** The Constant LOG. */
+  protected static final Log                           LOG                      = ExoLogger.getLogger(DocumentServerClient.class);
+
+  /** The connect timeout. */
+  protected final int                                  connectTimeout;
+
+  /** The read timeout. */
+  protected final int                                  readTimeout;
+
+  /** The max concurrent connections per host. */
+  protected final int                                  hostConnections;
+
+  /** The timeout of waiting for a free connection to a host. */
+  protected final int                                  acquireTimeout;
+
+  /** The permits of concurrent requests, mapped by host (with port). */
+  protected final ConcurrentHashMap<String, Semaphore> hostPermits              = new ConcurrentHashMap<String, Semaphore>();
+
+  /** The requests count. */
+  protected final AtomicLong                           requests                 = new AtomicLong();
+
+  /** The failed requests count. */
+  protected final AtomicLong                           errors                   = new AtomicLong();
+
+  /** The timed out requests count (including waiting for a connection). */
+  protected final AtomicLong                           timeouts                 = new AtomicLong();
+
+  /** The bytes read. */
+  protected final AtomicLong                           bytesRead                = new AtomicLong();
+
+  /** The total time of requests (in milliseconds). */
+  protected final AtomicLong                           requestsTime             = new AtomicLong();
+
+  /** The active requests count. */
+  protected final AtomicInteger                        active                   = new AtomicInteger();
+
+  /**
+   * Instantiates a new Document Server client.
+   *
+   * @param params the params
+   * @throws ConfigurationException the configuration exception
+   */
+  public DocumentServerClient(InitParams params) throws ConfigurationException {
+    PropertiesParam param = params != null ? params.getPropertiesParam("client-configuration") : null;
+    this.connectTimeout = intConfig(param, CONFIG_CONNECT_TIMEOUT, CONNECT_TIMEOUT_DEFAULT);
+    this.readTimeout = intConfig(param, CONFIG_READ_TIMEOUT, READ_TIMEOUT_DEFAULT);
+    this.hostConnections = intConfig(param, CONFIG_HOST_CONNECTIONS, HOST_CONNECTIONS_DEFAULT);
+    this.acquireTimeout = intConfig(param, CONFIG_ACQUIRE_TIMEOUT, ACQUIRE_TIMEOUT_DEFAULT);
+    if (hostConnections <= 0) {
+      throw new ConfigurationException("Configuration of " + CONFIG_HOST_CONNECTIONS + " should be a positive number: "
+          + hostConnections);
+    }
+  }
+
+  /**
+   * Get content from given URL.
+   *
+   * @param <T> the result type
+   * @param contentUrl the content URL
+   * @param reader the response reader
+   * @return the result of the reader
+   * @throws OnlyofficeEditorException if request failed or response not successful
+   */
+  public <T> T get(String contentUrl, ResponseReader<T> reader) throws OnlyofficeEditorException {
+    return request(contentUrl, null, null, reader);
+  }
+
+  /**
+   * Post given text to a service (e.g. a command to the command service) at given URL.
+   *
+   * @param <T> the result type
+   * @param serviceUrl the service URL
+   * @param contentType the content type of posted text
+   * @param text the text
+   * @param reader the response reader
+   * @return the result of the reader
+   * @throws OnlyofficeEditorException if request failed or response not successful
+   */
+  public <T> T post(String serviceUrl, String contentType, String text, ResponseReader<T> reader) throws OnlyofficeEditorException {
+    return request(serviceUrl, contentType, text, reader);
+  }
+
+  /**
+   * Request given URL: GET if no text to post, POST otherwise.
+   *
+   * @param <T> the result type
+   * @param contentUrl the content URL
+   * @param contentType the content type of posted text, can be <code>null</code> for GET
+   * @param text the text to post, <code>null</code> for GET
+   * @param reader the response reader
+   * @return the result of the reader
+   * @throws OnlyofficeEditorException if request failed or response not successful
+   */
+  protected <T> T request(String contentUrl, String contentType, String text, ResponseReader<T> reader) throws OnlyofficeEditorException {
+    URL url;
+    try {
+      url = new URL(contentUrl);
+    } catch (MalformedURLException e) {
+      throw new OnlyofficeEditorException("Error parsing URL " + contentUrl, e);
+    }
+    Semaphore permits = hostPermits(url);
+    try {
+      if (!permits.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS)) {
+        timeouts.incrementAndGet();
+        throw new OnlyofficeEditorException("Timeout waiting for a connection to " + url.getAuthority());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OnlyofficeEditorException("Interrupted waiting for a connection to " + url.getAuthority(), e);
+    }
+    requests.incrementAndGet();
+    active.incrementAndGet();
+    long start = System.currentTimeMillis();
+    boolean success = false;
+    try {
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      connection.setConnectTimeout(connectTimeout);
+      connection.setReadTimeout(readTimeout);
+      connection.setUseCaches(false);
+      if (text != null) {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        connection.setRequestProperty("Content-Type", contentType);
+        try (OutputStream out = connection.getOutputStream()) {
+          out.write(body);
+        }
+      }
+      int responseCode = connection.getResponseCode();
+      if (responseCode != HttpURLConnection.HTTP_OK) {
+        release(connection.getErrorStream());
+        throw new OnlyofficeEditorException("Error requesting " + contentUrl + ". Response: " + responseCode + " "
+            + connection.getResponseMessage());
+      }
+      InputStream data = connection.getInputStream();
+      try {
+        T result = reader.read(new CountingInputStream(data), connection.getContentLengthLong());
+        success = true;
+        return result;
+      } finally {
+        release(data);
+      }
+    } catch (SocketTimeoutException e) {
+      timeouts.incrementAndGet();
+      throw new OnlyofficeEditorException("Timeout requesting " + contentUrl, e);
+    } catch (IOException e) {
+      throw new OnlyofficeEditorException("Error requesting " + contentUrl, e);
+    } finally {
+      if (!success) {
+        errors.incrementAndGet();
+      }
+      requestsTime.addAndGet(System.currentTimeMillis() - start);
+      active.decrementAndGet();
+      permits.release();
+    }
+  }
+
+  /**
+   * Gets the requests count.
+   *
+   * @return the requests
+   */
+  public long getRequests() {
+    return requests.get();
+  }
+
+  /**
+   * Gets the failed requests count.
+   *
+   * @return the errors
+   */
+  public long getErrors() {
+    return errors.get();
+  }
+
+  /**
+   * Gets the timed out requests count.
+   *
+   * @return the timeouts
+   */
+  public long getTimeouts() {
+    return timeouts.get();
+  }
+
+  /**
+   * Gets the bytes read from Document Server.
+   *
+   * @return the bytes read
+   */
+  public long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  /**
+   * Gets the total time of requests (in milliseconds).
+   *
+   * @return the requests time
+   */
+  public long getRequestsTime() {
+    return requestsTime.get();
+  }
+
+  /**
+   * Gets the active requests count.
+   *
+   * @return the active
+   */
+  public int getActive() {
+    return active.get();
+  }
+
+  /**
+   * Permits for requests to a host of given URL. Permits are kept for a limited number of hosts: when it's
+   * reached, permits of hosts without active requests will be removed, thus the permits will not grow with
+   * all hosts ever requested.
+   *
+   * @param url the url
+   * @return the semaphore
+   */
+  protected Semaphore hostPermits(URL url) {
+    String host = url.getAuthority();
+    Semaphore permits = hostPermits.get(host);
+    if (permits == null) {
+      if (hostPermits.size() >= HOSTS_LIMIT) {
+        hostPermits.values().removeIf(p -> p.availablePermits() == hostConnections);
+      }
+      Semaphore newPermits = new Semaphore(hostConnections, true);
+      permits = hostPermits.putIfAbsent(host, newPermits);
+      if (permits == null) {
+        permits = newPermits;
+      }
+    }
+    return permits;
+  }
+
+  /**
+   * Read a rest of response (if it's not large) and close the stream, this lets JVM reuse the connection.
+   *
+   * @param data the response stream, can be <code>null</code>
+   */
+  protected void release(InputStream data) {
+    if (data != null) {
+      try {
+        byte[] buff = new byte[4096];
+        int drained = 0;
+        int r;
+        while (drained < DRAIN_LIMIT && (r = data.read(buff)) != -1) {
+          drained += r;
+        }
+      } catch (IOException e) {
+        // connection will not be reused
+      } finally {
+        try {
+          data.close();
+        } catch (IOException e) {
+          LOG.warn("Error closing Document Server response stream", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Integer configuration parameter.
+   *
+   * @param param the param
+   * @param name the name
+   * @param defaultValue the default value
+   * @return the value
+   * @throws ConfigurationException if value isn't a number
+   */
+  protected int intConfig(PropertiesParam param, String name, int defaultValue) throws ConfigurationException {
+    String value = param != null ? param.getProperty(name) : null;
+    if (value != null && (value = value.trim()).length() > 0) {
+      try {
+        return Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+        throw new ConfigurationException("Configuration of " + name + " should be a number: " + value);
+      }
+    }
+    return defaultValue;
+  }
+}
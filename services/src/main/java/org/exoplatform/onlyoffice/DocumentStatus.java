@@ -19,6 +19,11 @@
  */
 package org.exoplatform.onlyoffice;
 
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
 /**
  * Onlyoffice Config status as described in <a href="http://api.onlyoffice.com/editors/callback">callback
  * handler documentation</a>.
@@ -115,4 +120,33 @@ public class DocumentStatus {
     this.users = users;
   }
 
+  /**
+   * Parse document status JSON sent by the Document Server.
+   *
+   * @param statusText the status JSON
+   * @param key the document key of the request, used if the status has no key
+   * @return the document status
+   * @throws ParseException if the status cannot be parsed
+   */
+  public static DocumentStatus parse(String statusText, String key) throws ParseException {
+    JSONParser parser = new JSONParser();
+    Object obj = parser.parse(statusText);
+    JSONObject jsonObj = (JSONObject) obj;
+    String statusKey = (String) jsonObj.get("key");
+    long statusCode = (long) jsonObj.get("status");
+    String statusUrl = (String) jsonObj.get("url");
+    // Oct 2017: When Document server calls with status 4 (user closed w/o modification), the users array
+    // will be null
+    JSONArray statusUsersArray = (JSONArray) jsonObj.get("users");
+    @SuppressWarnings("unchecked")
+    String[] statusUsers = statusUsersArray != null ? (String[]) statusUsersArray.toArray(new String[statusUsersArray.size()])
+                                                    : new String[0];
+
+    DocumentStatus status = new DocumentStatus();
+    status.setKey(statusKey != null && statusKey.length() > 0 ? statusKey : key);
+    status.setStatus(statusCode);
+    status.setUrl(statusUrl);
+    status.setUsers(statusUsers);
+    return status;
+  }
 }
@@ -0,0 +1,592 @@
+
+/*
+ * Copyright (C) 2003-2018 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
+import org.exoplatform.management.rest.annotations.RESTEndpoint;
+
+/**
+ * Metrics of editors lifecycle: active documents and editors, editor creation, saving of edited documents
+ * by phases, document locking, requests to the Document Server, responses to its statuses and events of
+ * asynchronous listeners. Available via JMX
+ * (exo:service=onlyoffice,view=editor) and REST (/rest/management/onlyoffice-editor).<br>
+ * 
+ * Created by The eXo Platform SAS.
+ * 
+ * @version $Id: EditorMetrics.java 00000 Oct 16, 2026 $
+ */
+@Managed
+@NameTemplate({ @Property(key = "service", value = "onlyoffice"), @Property(key = "view", value = "editor") })
+@ManagedDescription("Onlyoffice editor metrics")
+@RESTEndpoint(path = "onlyoffice-editor")
+public class EditorMetrics {
+
+  /**
+   * Histogram of operation times. Times are counted in buckets of powers of two microseconds, thus a
+   * percentile is an upper bound with precision of two times, that's enough to see an order of a latency
+   * without keeping the samples.
+   */
+  public static class Timer {
+
+    /** The Constant BUCKETS. */
+    protected static final int      BUCKETS = 40;
+
+    /** The count. */
+    protected final LongAdder       count   = new LongAdder();
+
+    /** The total time (in nanoseconds). */
+    protected final LongAdder       total   = new LongAdder();
+
+    /** The max time (in nanoseconds). */
+    protected final AtomicLong      max     = new AtomicLong();
+
+    /** Counts of times, bucket N counts times less than 2^N microseconds. */
+    protected final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Record an operation time.
+     *
+     * @param nanos the time in nanoseconds
+     */
+    public void record(long nanos) {
+      long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+      buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+      count.increment();
+      total.add(nanos);
+      max.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Record time of an operation started at given time.
+     *
+     * @param startNanos the start time (by {@link System#nanoTime()})
+     */
+    public void recordSince(long startNanos) {
+      record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Gets the count.
+     *
+     * @return the count
+     */
+    public long getCount() {
+      return count.sum();
+    }
+
+    /**
+     * Gets the mean time (in milliseconds).
+     *
+     * @return the mean
+     */
+    public double getMean() {
+      long c = count.sum();
+      return c > 0 ? total.sum() / c / 1000000d : 0;
+    }
+
+    /**
+     * Gets the max time (in milliseconds).
+     *
+     * @return the max
+     */
+    public double getMax() {
+      return max.get() / 1000000d;
+    }
+
+    /**
+     * Gets the upper bound of a percentile of times (in milliseconds).
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the time
+     */
+    public double percentile(double percentile) {
+      long[] counts = new long[BUCKETS];
+      long c = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        c += counts[i] = buckets.get(i);
+      }
+      if (c == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(c * percentile / 100);
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return Math.min((1L << i) / 1000d, getMax());
+        }
+      }
+      return getMax();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+      return String.format("count=%d mean=%.2f p50=%.2f p90=%.2f p99=%.2f max=%.2f ms",
+                           getCount(),
+                           getMean(),
+                           percentile(50),
+                           percentile(90),
+                           percentile(99),
+                           getMax());
+    }
+  }
+
+  /** Time of creating a new editor (first user of a document). */
+  protected final Timer                                 createNew       = new Timer();
+
+  /** Time of getting an editor of already edited document (co-editing or the same user). */
+  protected final Timer                                 createExisting  = new Timer();
+
+  /** Time of fetching an edited document from the Document Server. */
+  protected final Timer                                 saveFetch       = new Timer();
+
+  /** Time of locking a document for saving (including waiting for other locks). */
+  protected final Timer                                 saveLock        = new Timer();
+
+  /** Time of writing an edited document to the storage. */
+  protected final Timer                                 saveWrite       = new Timer();
+
+  /** Time of creating a version of an edited document. */
+  protected final Timer                                 saveCheckin     = new Timer();
+
+  /** Time of saving an edited document, all phases. */
+  protected final Timer                                 saveTotal       = new Timer();
+
+  /** The saving errors count. */
+  protected final LongAdder                             saveErrors      = new LongAdder();
+
+  /** The lock attempts count. */
+  protected final LongAdder                             lockAttempts    = new LongAdder();
+
+  /** Count of lock attempts waited for other locks. */
+  protected final LongAdder                             lockWaits       = new LongAdder();
+
+  /** Count of lock attempts failed (document remained locked by others). */
+  protected final LongAdder                             lockFailures    = new LongAdder();
+
+  /** Time of handling a status of the Document Server. */
+  protected final Timer                                 statusTime      = new Timer();
+
+  /** Count of responses to the Document Server statuses, mapped by HTTP status code. */
+  protected final ConcurrentHashMap<Integer, LongAdder> statusResponses = new ConcurrentHashMap<Integer, LongAdder>();
+
+  /** The editors service, can be <code>null</code> until the service will be created. */
+  protected volatile OnlyofficeEditorServiceImpl        editors;
+
+  /**
+   * Instantiates new editor metrics.
+   */
+  public EditorMetrics() {
+  }
+
+  /**
+   * Set the editors service providing actual gauges.
+   *
+   * @param editors the editors service
+   */
+  void setEditors(OnlyofficeEditorServiceImpl editors) {
+    this.editors = editors;
+  }
+
+  /**
+   * Time of creating an editor.
+   *
+   * @param created <code>true</code> if a new editor was created, <code>false</code> if already edited
+   *          document
+   * @return the timer
+   */
+  public Timer createEditor(boolean created) {
+    return created ? createNew : createExisting;
+  }
+
+  /**
+   * Count a response to the Document Server status.
+   *
+   * @param statusCode the HTTP status code of the response
+   * @param startNanos the time when the status was received (by {@link System#nanoTime()})
+   */
+  public void statusResponse(int statusCode, long startNanos) {
+    statusTime.recordSince(startNanos);
+    statusResponses.computeIfAbsent(statusCode, c -> new LongAdder()).increment();
+  }
+
+  /**
+   * Gets the active documents count.
+   *
+   * @return the active documents
+   */
+  @Managed
+  @ManagedDescription("Number of documents open in editors")
+  public int getActiveDocuments() {
+    OnlyofficeEditorServiceImpl editors = this.editors;
+    return editors != null ? editors.usersCache.getCacheSize() : 0;
+  }
+
+  /**
+   * Gets the active editors count.
+   *
+   * @return the active editors
+   */
+  @Managed
+  @ManagedDescription("Number of editors of users open on documents")
+  public int getActiveEditors() {
+    OnlyofficeEditorServiceImpl editors = this.editors;
+    return editors != null ? editors.activeCache.getCacheSize() : 0;
+  }
+
+  /**
+   * Gets the savings queue size.
+   *
+   * @return the savings queue size
+   */
+  @Managed
+  @ManagedDescription("Number of edited documents waiting for saving")
+  public int getSavingQueue() {
+    OnlyofficeEditorServiceImpl editors = this.editors;
+    return editors != null ? editors.saveExecutor.getQueue().size() : 0;
+  }
+
+  /**
+   * Gets the create new editor time.
+   *
+   * @return the create new editor time
+   */
+  @Managed
+  @ManagedDescription("Time of creating a new editor (first user of a document)")
+  public String getCreateNewEditorTime() {
+    return createNew.toString();
+  }
+
+  /**
+   * Gets the create co-editor time.
+   *
+   * @return the create co-editor time
+   */
+  @Managed
+  @ManagedDescription("Time of getting an editor of already edited document (co-editing)")
+  public String getCreateCoEditorTime() {
+    return createExisting.toString();
+  }
+
+  /**
+   * Gets the save fetch time.
+   *
+   * @return the save fetch time
+   */
+  @Managed
+  @ManagedDescription("Time of fetching edited document from the Document Server")
+  public String getSaveFetchTime() {
+    return saveFetch.toString();
+  }
+
+  /**
+   * Gets the save lock time.
+   *
+   * @return the save lock time
+   */
+  @Managed
+  @ManagedDescription("Time of locking edited document for saving, including waiting for others")
+  public String getSaveLockTime() {
+    return saveLock.toString();
+  }
+
+  /**
+   * Gets the save write time.
+   *
+   * @return the save write time
+   */
+  @Managed
+  @ManagedDescription("Time of writing edited document to the storage")
+  public String getSaveWriteTime() {
+    return saveWrite.toString();
+  }
+
+  /**
+   * Gets the save checkin time.
+   *
+   * @return the save checkin time
+   */
+  @Managed
+  @ManagedDescription("Time of creating a version of edited document")
+  public String getSaveCheckinTime() {
+    return saveCheckin.toString();
+  }
+
+  /**
+   * Gets the save total time.
+   *
+   * @return the save total time
+   */
+  @Managed
+  @ManagedDescription("Time of saving edited document, all phases")
+  public String getSaveTime() {
+    return saveTotal.toString();
+  }
+
+  /**
+   * Gets the save errors.
+   *
+   * @return the save errors
+   */
+  @Managed
+  @ManagedDescription("Number of failed savings of edited documents")
+  public long getSaveErrors() {
+    return saveErrors.sum();
+  }
+
+  /**
+   * Gets the lock attempts.
+   *
+   * @return the lock attempts
+   */
+  @Managed
+  @ManagedDescription("Number of attempts to lock edited document")
+  public long getLockAttempts() {
+    return lockAttempts.sum();
+  }
+
+  /**
+   * Gets the lock waits.
+   *
+   * @return the lock waits
+   */
+  @Managed
+  @ManagedDescription("Number of lock attempts waited for a lock of others")
+  public long getLockWaits() {
+    return lockWaits.sum();
+  }
+
+  /**
+   * Gets the lock failures.
+   *
+   * @return the lock failures
+   */
+  @Managed
+  @ManagedDescription("Number of lock attempts failed as document remained locked by others")
+  public long getLockFailures() {
+    return lockFailures.sum();
+  }
+
+  /**
+   * Gets the status time.
+   *
+   * @return the status time
+   */
+  @Managed
+  @ManagedDescription("Time of handling a status of the Document Server")
+  public String getStatusTime() {
+    return statusTime.toString();
+  }
+
+  /**
+   * Gets the status responses.
+   *
+   * @return the status responses
+   */
+  @Managed
+  @ManagedDescription("Number of responses to the Document Server statuses by HTTP status code")
+  public String getStatusResponses() {
+    Map<Integer, Long> counts = new TreeMap<Integer, Long>();
+    statusResponses.forEach((code, count) -> counts.put(code, count.sum()));
+    return counts.toString();
+  }
+
+  /**
+   * Gets the status errors.
+   *
+   * @return the status errors
+   */
+  @Managed
+  @ManagedDescription("Number of error responses to the Document Server statuses")
+  public long getStatusErrors() {
+    long errors = 0;
+    for (Map.Entry<Integer, LongAdder> e : statusResponses.entrySet()) {
+      if (e.getKey() != 200) {
+        errors += e.getValue().sum();
+      }
+    }
+    return errors;
+  }
+
+  /**
+   * Gets the Document Server requests count.
+   *
+   * @return the Document Server requests
+   */
+  @Managed
+  @ManagedDescription("Number of requests to the Document Server")
+  public long getDocumentServerRequests() {
+    OnlyofficeEditorServiceImpl editors = this.editors;
+    return editors != null ? editors.documentServer.getRequests() : 0;
+  }
+
+  /**
+   * Gets the Document Server active requests count.
+   *
+   * @return the Document Server active requests
+   */
+  @Managed
+  @ManagedDescription("Number of requests to the Document Server in progress")
+  public int getDocumentServerActiveRequests() {
+    OnlyofficeEditorServiceImpl editors = this.editors;
+    return editors != null ? editors.documentServer.getActive() : 0;
+  }
+
+  /**
+   * Gets the Document Server errors count.
+   *
+   * @return the Document Server errors
+   */
+  @Managed
+  @ManagedDescription("Number of failed requests to the Document Server")
+  public long getDocumentServerErrors() {
+    OnlyofficeEditorServiceImpl editors = this.editors;
+    return editors != null ? editors.documentServer.getErrors() : 0;
+  }
+
+  /**
+   * Gets the Document Server timeouts count.
+   *
+   * @return the Document Server timeouts
+   */
+  @Managed
+  @ManagedDescription("Number of timed out requests to the Document Server, including waiting for a connection")
+  public long getDocumentServerTimeouts() {
+    OnlyofficeEditorServiceImpl editors = this.editors;
+    return editors != null ? editors.documentServer.getTimeouts() : 0;
+  }
+
+  /**
+   * Gets the bytes read from the Document Server.
+   *
+   * @return the Document Server bytes read
+   */
+  @Managed
+  @ManagedDescription("Number of bytes read from the Document Server")
+  public long getDocumentServerBytesRead() {
+    OnlyofficeEditorServiceImpl editors = this.editors;
+    return editors != null ? editors.documentServer.getBytesRead() : 0;
+  }
+
+  /**
+   * Gets the mean time of requests to the Document Server (in milliseconds).
+   *
+   * @return the Document Server request time
+   */
+  @Managed
+  @ManagedDescription("Mean time of requests to the Document Server in milliseconds")
+  public double getDocumentServerRequestTime() {
+    OnlyofficeEditorServiceImpl editors = this.editors;
+    if (editors != null) {
+      long requests = editors.documentServer.getRequests();
+      return requests > 0 ? (double) editors.documentServer.getRequestsTime() / requests : 0;
+    }
+    return 0;
+  }
+
+  /**
+   * Gets the listener events delivered.
+   *
+   * @return the listener events delivered
+   */
+  @Managed
+  @ManagedDescription("Number of events delivered to asynchronous editor listeners")
+  public long getListenerEventsDelivered() {
+    return listenersSum(AsyncEditorListener::getDelivered);
+  }
+
+  /**
+   * Gets the listener events delayed.
+   *
+   * @return the listener events delayed
+   */
+  @Managed
+  @ManagedDescription("Number of events waited for a place in full queue of asynchronous editor listeners")
+  public long getListenerEventsDelayed() {
+    return listenersSum(AsyncEditorListener::getDelayed);
+  }
+
+  /**
+   * Gets the listener events dropped.
+   *
+   * @return the listener events dropped
+   */
+  @Managed
+  @ManagedDescription("Number of events dropped by asynchronous editor listeners as their queue remained full")
+  public long getListenerEventsDropped() {
+    return listenersSum(AsyncEditorListener::getDropped);
+  }
+
+  /**
+   * Gets the listener events failed.
+   *
+   * @return the listener events failed
+   */
+  @Managed
+  @ManagedDescription("Number of events failed in asynchronous editor listeners")
+  public long getListenerEventsFailed() {
+    return listenersSum(AsyncEditorListener::getFailed);
+  }
+
+  /**
+   * Gets the listener events queued.
+   *
+   * @return the listener events queued
+   */
+  @Managed
+  @ManagedDescription("Number of events waiting in queues of asynchronous editor listeners")
+  public long getListenerEventsQueued() {
+    return listenersSum(AsyncEditorListener::getQueued);
+  }
+
+  /**
+   * Sum of a counter of asynchronous listeners registered in the editors service.
+   *
+   * @param counter the counter
+   * @return the sum
+   */
+  protected long listenersSum(ToLongFunction<AsyncEditorListener> counter) {
+    OnlyofficeEditorServiceImpl editors = this.editors;
+    long sum = 0;
+    if (editors != null) {
+      for (OnlyofficeEditorListener l : editors.listeners) {
+        if (l instanceof AsyncEditorListener) {
+          sum += counter.applyAsLong((AsyncEditorListener) l);
+        }
+      }
+    }
+    return sum;
+  }
+}
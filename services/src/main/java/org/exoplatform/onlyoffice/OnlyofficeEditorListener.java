@@ -69,4 +69,18 @@ public interface OnlyofficeEditorListener {
    */
   void onError(Config config);
 
+  /**
+   * Checks if the listener needs synchronous delivery of events: in the thread firing them (a request of user
+   * or the Document Server). Otherwise, when asynchronous delivery enabled in the editor service, events will
+   * be delivered by a dedicated thread of the listener (see {@link AsyncEditorListener}). That thread will have
+   * the container and {@link org.exoplatform.services.security.ConversationState} of the firing thread, and
+   * its own request lifecycle, but not other thread-bound state of the request (e.g. the portal request context
+   * or an open JCR session of the caller). A listener depending on such state should be synchronous.
+   *
+   * @return true, if listener should be invoked synchronously
+   */
+  default boolean isSynchronous() {
+    return false;
+  }
+
 }
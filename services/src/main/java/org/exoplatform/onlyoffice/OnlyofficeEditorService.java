@@ -73,7 +73,8 @@ public interface OnlyofficeEditorService {
   /**
    * Update a configuration associated with given editor {@link Config} instance. A {@link Node} from that the
    * config was created will be updated. This operation will close the editor and it will not be usable
-   * after that.
+   * after that. Saving of the document can complete in background after this method returned, its errors
+   * will be reported via {@link Config#getError()} and listeners.
    * 
    * @param userId {@link String}
    * @param status {@link DocumentStatus}
@@ -103,6 +104,16 @@ public interface OnlyofficeEditorService {
    */
   boolean canDownloadBy(String hostName);
 
+  /**
+   * State version of editing document. The version increases on each change of the document editors
+   * (users joined or leaved, editor errors, saving), thus a client can find that its state or config is
+   * actual without reading them.
+   *
+   * @param fileKey {@link String}
+   * @return the version, or <code>-1</code> if document isn't editing
+   */
+  long getStateVersion(String fileKey);
+
   /**
    * Local state of editing document.
    *
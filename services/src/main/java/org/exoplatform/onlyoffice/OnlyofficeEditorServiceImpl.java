@@ -20,39 +20,65 @@ package org.exoplatform.onlyoffice;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.InetAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
 
 import javax.jcr.AccessDeniedException;
+import javax.jcr.InvalidItemStateException;
 import javax.jcr.Item;
 import javax.jcr.Node;
+import javax.jcr.NodeIterator;
 import javax.jcr.PathNotFoundException;
 import javax.jcr.Property;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.Value;
 import javax.jcr.lock.Lock;
-
-import org.apache.commons.io.input.AutoCloseInputStream;
+import javax.jcr.lock.LockException;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import javax.jcr.observation.ObservationManager;
+
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
 import org.exoplatform.container.PortalContainer;
+import org.exoplatform.container.component.RequestLifeCycle;
 import org.exoplatform.container.configuration.ConfigurationException;
 import org.exoplatform.container.xml.InitParams;
 import org.exoplatform.container.xml.PropertiesParam;
@@ -61,20 +87,30 @@ import org.exoplatform.portal.Constants;
 import org.exoplatform.services.cache.CacheListener;
 import org.exoplatform.services.cache.CacheListenerContext;
 import org.exoplatform.services.cache.CacheService;
+import org.exoplatform.services.cache.CachedObjectSelector;
 import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.services.cache.ObjectCacheInfo;
 import org.exoplatform.services.jcr.RepositoryService;
+import org.exoplatform.services.jcr.core.value.ReadableBinaryValue;
 import org.exoplatform.services.jcr.ext.app.SessionProviderService;
 import org.exoplatform.services.jcr.ext.common.SessionProvider;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
+import org.exoplatform.services.organization.Membership;
+import org.exoplatform.services.organization.MembershipEventListener;
 import org.exoplatform.services.organization.OrganizationService;
 import org.exoplatform.services.organization.User;
+import org.exoplatform.services.organization.UserEventListener;
 import org.exoplatform.services.organization.UserProfile;
+import org.exoplatform.services.organization.UserProfileEventListener;
 import org.exoplatform.services.organization.UserProfileHandler;
 import org.exoplatform.services.security.Authenticator;
 import org.exoplatform.services.security.ConversationState;
 import org.exoplatform.services.security.Identity;
 import org.exoplatform.services.security.IdentityRegistry;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
 import org.picocontainer.Startable;
 
 /**
@@ -107,6 +143,113 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
   /** Configuration key for Document Server's allowed hosts in requests from a DS to eXo side. */
   public static final String                                          CONFIG_DS_ALLOWEDHOSTS = "documentserver-allowedhosts";
 
+  /** Configuration key for time (in seconds) to keep resolved addresses of Document Server hosts. */
+  public static final String                                          CONFIG_DS_ADDRESSES_TTL = "documentserver-addresses-ttl";
+
+  /** The Constant DS_ADDRESSES_TTL_DEFAULT (in seconds). */
+  protected static final int                                          DS_ADDRESSES_TTL_DEFAULT = 300;
+
+  /** Configuration key for number of threads saving edited documents in background. */
+  public static final String                                          CONFIG_SAVE_THREADS    = "save-threads";
+
+  /** Configuration key for capacity of the queue of documents waiting for saving. */
+  public static final String                                          CONFIG_SAVE_QUEUE      = "save-queue-size";
+
+  /** The Constant SAVE_THREADS_DEFAULT. */
+  protected static final int                                          SAVE_THREADS_DEFAULT   = 4;
+
+  /** The Constant SAVE_QUEUE_DEFAULT. */
+  protected static final int                                          SAVE_QUEUE_DEFAULT     = 100;
+
+  /** Path (relative to the root of the system workspace) of pending savings of documents. */
+  protected static final String                                       SAVES_PATH             = "exo:applications/onlyoffice/saves";
+
+  /**
+   * The Constant SAVE_REPLAY_INTERVAL (in milliseconds): interval of checking for interrupted savings, also
+   * a pending saving of another server not updated during this time is considered interrupted.
+   */
+  protected static final long                                         SAVE_REPLAY_INTERVAL   = 5 * 60 * 1000;
+
+  /** The Constant SAVE_REPLAY_DELAY (in milliseconds): delay of the first check for interrupted savings. */
+  protected static final long                                         SAVE_REPLAY_DELAY      = 60 * 1000;
+
+  /** The Constant SAVE_REPLAY_ATTEMPTS: number of attempts to replay an interrupted saving. */
+  protected static final long                                         SAVE_REPLAY_ATTEMPTS   = 3;
+
+  /** Configuration key for maximum size (in bytes) of downloaded document kept in memory before saving. */
+  public static final String                                          CONFIG_DOWNLOAD_MEMORY = "download-memory-threshold";
+
+  /** The Constant DOWNLOAD_MEMORY_DEFAULT (1M). */
+  protected static final int                                          DOWNLOAD_MEMORY_DEFAULT = 1024 * 1024;
+
+  /** Configuration key for asynchronous delivery of events to listeners not requiring synchronous one. */
+  public static final String                                          CONFIG_LISTENERS_ASYNC = "listeners-async";
+
+  /** Configuration key for capacity of the queue of events waiting for delivery to an asynchronous listener. */
+  public static final String                                          CONFIG_LISTENERS_QUEUE = "listeners-queue-size";
+
+  /** Configuration key for time (in milliseconds) to wait for a place in full queue of asynchronous listener. */
+  public static final String                                          CONFIG_LISTENERS_QUEUE_TIMEOUT = "listeners-queue-timeout";
+
+  /** The Constant LISTENERS_QUEUE_DEFAULT. */
+  protected static final int                                          LISTENERS_QUEUE_DEFAULT = 1000;
+
+  /** The Constant LISTENERS_QUEUE_TIMEOUT_DEFAULT (in milliseconds). */
+  protected static final int                                          LISTENERS_QUEUE_TIMEOUT_DEFAULT = 1000;
+
+  /** The Constant LISTENERS_STOP_TIMEOUT (in milliseconds). */
+  protected static final long                                         LISTENERS_STOP_TIMEOUT = 5000;
+
+  /** Configuration key for time window (in milliseconds) to merge "being edited" statuses of a document. */
+  public static final String                                          CONFIG_STATUS_BATCH_WINDOW = "status-batch-window";
+
+  /** The Constant STATUS_BATCH_WINDOW_DEFAULT (in milliseconds). */
+  protected static final int                                          STATUS_BATCH_WINDOW_DEFAULT = 500;
+
+  /** Configuration key for number of recent document savings remembered to recognize retried statuses. */
+  public static final String                                          CONFIG_STATUS_DEDUP_SIZE = "status-dedup-size";
+
+  /** The Constant STATUS_DEDUP_SIZE_DEFAULT. */
+  protected static final int                                          STATUS_DEDUP_SIZE_DEFAULT = 1000;
+
+  /** Configuration key for interval (in seconds) of checking for abandoned editors, zero to not check. */
+  public static final String                                          CONFIG_REAPER_INTERVAL = "reaper-interval";
+
+  /** Configuration key for time (in seconds) without activity after which editors can be abandoned. */
+  public static final String                                          CONFIG_REAPER_IDLE_TIME = "reaper-idle-time";
+
+  /** The Constant REAPER_INTERVAL_DEFAULT (in seconds). */
+  protected static final int                                          REAPER_INTERVAL_DEFAULT = 600;
+
+  /** The Constant REAPER_IDLE_TIME_DEFAULT (in seconds). */
+  protected static final int                                          REAPER_IDLE_TIME_DEFAULT = 7200;
+
+  /** Configuration key for the mode of document keys generation: random or content. */
+  public static final String                                          CONFIG_DOCUMENT_KEY_MODE = "document-key-mode";
+
+  /** Document key mode: a new random key for each editing session. */
+  public static final String                                          DOCUMENT_KEY_RANDOM    = "random";
+
+  /**
+   * Document key mode: a key derived from the document identity and its content version, the same for
+   * editing sessions of not modified document.
+   */
+  public static final String                                          DOCUMENT_KEY_CONTENT   = "content";
+
+  /** The Constant COMMAND_NO_DOCUMENT: error code of the command service when no document with the key. */
+  protected static final long                                         COMMAND_NO_DOCUMENT    = 1;
+
+  /** The Constant SAVE_STOP_TIMEOUT (in seconds). */
+  protected static final long                                         SAVE_STOP_TIMEOUT      = 60;
+
+  /** The Constant IPV4_PATTERN. */
+  protected static final Pattern                                      IPV4_PATTERN           =
+                                                                                   Pattern.compile("^\\d{1,3}(\\.\\d{1,3}){3}$");
+
+  /** The Constant IPV6_PATTERN, it's a trivial check: only hex digits and colons (optional IPv4 tail). */
+  protected static final Pattern                                      IPV6_PATTERN           =
+                                                                                   Pattern.compile("^[0-9a-fA-F:]*:[0-9a-fA-F:.]*$");
+
   /** The Constant HTTP_PORT_DELIMITER. */
   protected static final char                                         HTTP_PORT_DELIMITER    = ':';
 
@@ -125,12 +268,51 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
   /** The Constant LOCK_WAIT_TIMEOUT. */
   protected static final long                                         LOCK_WAIT_TIMEOUT      = 250;
 
+  /**
+   * Max time to wait for unlock event before checking the lock again. It's a safety net for lock releases
+   * without observation events (e.g. expired locks).
+   */
+  protected static final long                                         LOCK_WAIT_RECHECK      = 1000;
+
+  /** The Constant LOCK_OWNER_PROPERTY. */
+  protected static final String                                       LOCK_OWNER_PROPERTY    = "/jcr:lockOwner";
+
   /** The Constant EMPTY_TEXT. */
   protected static final String                                       EMPTY_TEXT             = "".intern();
 
   /** The Constant CACHE_NAME. */
   public static final String                                          CACHE_NAME             = "onlyoffice.EditorCache".intern();
 
+  /** The Constant USERS_CACHE_NAME. */
+  public static final String                                          USERS_CACHE_NAME       = "onlyoffice.EditorUsersCache".intern();
+
+  /** The Constant PATH_CACHE_NAME. */
+  public static final String                                          PATH_CACHE_NAME        = "onlyoffice.EditorPathCache".intern();
+
+  /** The Constant USER_CACHE_NAME. */
+  public static final String                                          USER_CACHE_NAME        = "onlyoffice.UserCache".intern();
+
+  /** The Constant USER_LANG_CACHE_NAME. */
+  public static final String                                          USER_LANG_CACHE_NAME   =
+                                                                                           "onlyoffice.UserLangCache".intern();
+
+  /** The Constant IDENTITY_CACHE_NAME. */
+  public static final String                                          IDENTITY_CACHE_NAME    = "onlyoffice.IdentityCache".intern();
+
+  /** The Constant METADATA_CACHE_NAME. */
+  public static final String                                          METADATA_CACHE_NAME    =
+                                                                                          "onlyoffice.DocumentMetadataCache".intern();
+
+  /** Properties of a document used in its metadata, changes of them invalidate the cached metadata. */
+  protected static final Set<String>                                  METADATA_PROPERTIES    =
+                                                                                          new HashSet<String>(Arrays.asList("exo:title",
+                                                                                                                            "dc:title",
+                                                                                                                            "exo:name",
+                                                                                                                            "jcr:created"));
+
+  /** Number of stripes in locks of Editing documents cache, should be a power of two. */
+  protected static final int                                          ACTIVE_LOCKS_STRIPES   = 64;
+
   /** The jcr service. */
   protected final RepositoryService                                   jcrService;
 
@@ -149,11 +331,46 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
   /** The authenticator. */
   protected final Authenticator                                       authenticator;
 
-  /** Cache of Editing documents. */
-  protected final ExoCache<String, ConcurrentHashMap<String, Config>> activeCache;
+  /** The Document Server client. */
+  protected final DocumentServerClient                                documentServer;
+
+  /** The editor metrics. */
+  protected final EditorMetrics                                       metrics;
+
+  /** Cache of editors of Editing documents, mapped by document key and user ID (see {@link #editorKey}). */
+  protected final ExoCache<String, Config>                            activeCache;
+
+  /** Users of Editing documents, mapped by document key. A cached set should not be modified. */
+  protected final ExoCache<String, HashSet<String>>                   usersCache;
+
+  /** Index of Editing documents: document key mapped by node path. */
+  protected final ExoCache<String, String>                            pathCache;
+
+  /** Near-cache of organization users, mapped by user name. */
+  protected final ExoCache<String, User>                              userCache;
+
+  /**
+   * Near-cache of identities of users not registered in the identity registry (e.g. for the Document Server
+   * requests), mapped by user name.
+   */
+  protected final ExoCache<String, Identity>                          identityCache;
+
+  /** Near-cache of documents metadata, mapped by workspace and node UUID or path (see {@link #metadataKey}). */
+  protected final ExoCache<String, DocumentMetadata>                  metadataCache;
+
+  /** Observers of changes of documents metadata, registered on start, mapped by workspace. */
+  protected final ConcurrentHashMap<String, MetadataListener>         metadataListeners      =
+                                                                                        new ConcurrentHashMap<String, MetadataListener>();
 
-  /** Lock for updating Editing documents cache. */
-  protected final ReentrantLock                                       activeLock             = new ReentrantLock();
+  /** Near-cache of users language, mapped by user name, empty text means no language in user profile. */
+  protected final ExoCache<String, String>                            langCache;
+
+  /**
+   * Striped locks for updating Editing documents cache. A document node path selects its lock, thus unrelated
+   * documents can be created in parallel while the same document always uses the same lock.
+   */
+  protected final ReentrantLock[]                                     activeLocks            =
+                                                                                  new ReentrantLock[ACTIVE_LOCKS_STRIPES];
 
   /** The config. */
   protected final Map<String, String>                                 config;
@@ -161,6 +378,9 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
   /** The upload url. */
   protected final String                                              uploadUrl;
 
+  /** The Document Server command service url. */
+  protected final String                                              commandServiceUrl;
+
   /** The documentserver host name. */
   protected final String                                              documentserverHostName;
 
@@ -173,6 +393,18 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
   /** The documentserver allowed hosts (can be empty if not configured). */
   protected final Set<String>                                         documentserverAllowedhosts;
 
+  /** The documentserver allowed networks (IP addresses and CIDR ranges, can be empty if not configured). */
+  protected final Set<AddressRange>                                   documentserverAllowedRanges;
+
+  /**
+   * IP addresses of Document Server and allowed hosts resolved on the service start and then again after
+   * their time to live. It lets check an access by an IP without DNS lookups.
+   */
+  protected volatile Set<String>                                      documentserverAddresses = Collections.emptySet();
+
+  /** Time (in milliseconds) to keep resolved addresses of Document Server hosts, zero to resolve once. */
+  protected final long                                                documentserverAddressesTTL;
+
   /** The file types. */
   protected final Map<String, String>                                 fileTypes              =
                                                                                 new ConcurrentHashMap<String, String>();
@@ -185,6 +417,194 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
   protected final ConcurrentLinkedQueue<OnlyofficeEditorListener>     listeners              =
                                                                                 new ConcurrentLinkedQueue<OnlyofficeEditorListener>();
 
+  /** Executor of background saving of edited documents. */
+  protected final ThreadPoolExecutor                                  saveExecutor;
+
+  /** ID of this service instance, it marks pending savings done by this server. */
+  protected final String                                              instanceId             = UUID.randomUUID().toString();
+
+  /** The container of this service, background tasks run in it. */
+  protected final ExoContainer                                        container;
+
+  /** Time window (in milliseconds) to merge "being edited" statuses of a document, zero to not merge. */
+  protected final int                                                 statusBatchWindow;
+
+  /** Executor of users sync by merged "being edited" statuses. */
+  protected final ScheduledThreadPoolExecutor                         syncExecutor;
+
+  /** Latest "being edited" statuses waiting for users sync, mapped by document key. */
+  protected final ConcurrentHashMap<String, DocumentStatus>           pendingSyncs           =
+                                                                                   new ConcurrentHashMap<String, DocumentStatus>();
+
+  /**
+   * Recent savings of documents (in progress and done), mapped by saving status ID (see {@link #savingId}).
+   * Least recently used savings will be removed when the map exceeds its maximum size.
+   */
+  protected final Map<String, CompletableFuture<Void>>                savings;
+
+  /** Generate document keys from the document identity and content version instead of random ones. */
+  protected final boolean                                             contentKeys;
+
+  /** Interval (in milliseconds) of checking for abandoned editors, zero to not check. */
+  protected final long                                                reaperInterval;
+
+  /** Time (in milliseconds) without activity after which editors will be checked in the Document Server. */
+  protected final long                                                reaperIdleTime;
+
+  /** Executor of checking for abandoned editors and interrupted savings, created on start. */
+  protected ScheduledThreadPoolExecutor                               reaperExecutor;
+
+  /** Time of last activity (editor open, status or content request) of Editing documents, mapped by key. */
+  protected final ConcurrentHashMap<String, Long>                     activities             =
+                                                                                 new ConcurrentHashMap<String, Long>();
+
+  /** Deliver events asynchronously to listeners not requiring synchronous delivery. */
+  protected final boolean                                             listenersAsync;
+
+  /** Capacity of events queue of an asynchronous listener. */
+  protected final int                                                 listenersQueueSize;
+
+  /** Time (in milliseconds) to wait for a place in full events queue of an asynchronous listener. */
+  protected final int                                                 listenersQueueTimeout;
+
+  /** Maximum size of downloaded document kept in memory, larger documents will be spooled to a file. */
+  protected final int                                                 downloadMemoryThreshold;
+
+  /** Savings waiting for unlocking of documents, mapped by node path. */
+  protected final ConcurrentHashMap<String, ConcurrentLinkedQueue<DocumentSave>> lockWaiters =
+                                                                                             new ConcurrentHashMap<String, ConcurrentLinkedQueue<DocumentSave>>();
+
+  /** Observers of documents unlocking, mapped by workspace name. */
+  protected final ConcurrentHashMap<String, UnlockListener>           unlockListeners        =
+                                                                                      new ConcurrentHashMap<String, UnlockListener>();
+
+  /** Executor of rechecks of the lock for savings waiting for unlocking of documents. */
+  protected final ScheduledThreadPoolExecutor                         lockExecutor;
+
+  /** Last scheduled saving of a document, mapped by document key. */
+  protected final ConcurrentHashMap<String, DocumentSave>             saves                  =
+                                                                            new ConcurrentHashMap<String, DocumentSave>();
+
+  /** State versions of Editing documents, mapped by document key. */
+  protected final ConcurrentHashMap<String, AtomicLong>               stateVersions          =
+                                                                                    new ConcurrentHashMap<String, AtomicLong>();
+
+  /**
+   * Initial state version of documents in this service instance. It's random, thus versions of the same
+   * document on different cluster nodes (or after restart) will differ. Versions of a document also start
+   * from its first request time, as the same key can be reused by next editing sessions (content keys).
+   */
+  protected final long                                                stateVersionBase       = (RANDOM.nextLong() >>> 16) << 16;
+
+  /**
+   * Saving of edited document submitted by Document Server. Savings of the same document will run one after
+   * another in order of their submission, savings of different documents run in parallel. A saving is
+   * persisted as pending until it will be done (see {@link #persistSave}).
+   */
+  protected class DocumentSave implements Runnable {
+
+    /** The config, <code>null</code> for replayed saving of a document without editors in this server. */
+    protected final Config                  config;
+
+    /** The workspace. */
+    protected final String                  workspace;
+
+    /** The path. */
+    protected final String                  path;
+
+    /** The status. */
+    protected final DocumentStatus          status;
+
+    /** The path of the pending saving node, <code>null</code> if it was not persisted. */
+    protected final String                  marker;
+
+    /** The result. */
+    protected final CompletableFuture<Void> result = new CompletableFuture<Void>();
+
+    /** Next saving of the same document, guarded by the document mapping in {@link #saves}. */
+    protected DocumentSave                  next;
+
+    /** The downloaded content, <code>null</code> until downloaded. */
+    protected SpooledContent                spooled;
+
+    /** The edited time. */
+    protected Calendar                      editedTime;
+
+    /** The saving start time (in nanoseconds). */
+    protected long                          start;
+
+    /** The lock attempts start time (in nanoseconds), zero until first attempt. */
+    protected long                          lockStart;
+
+    /** Time (in milliseconds) until the saving can wait for unlocking of the document, zero until first wait. */
+    protected long                          lockDeadline;
+
+    /** The flag of the saving waiting for unlocking of the document. */
+    protected final AtomicBoolean           parked = new AtomicBoolean();
+
+    /**
+     * Instantiates a new document save.
+     *
+     * @param config the config, can be <code>null</code>
+     * @param workspace the workspace
+     * @param path the path
+     * @param status the status
+     * @param marker the pending saving path, can be <code>null</code>
+     */
+    protected DocumentSave(Config config, String workspace, String path, DocumentStatus status, String marker) {
+      this.config = config;
+      this.workspace = workspace;
+      this.path = path;
+      this.status = status;
+      this.marker = marker;
+    }
+
+    /**
+     * Gets the document key.
+     *
+     * @return the key
+     */
+    protected String getKey() {
+      return status.getKey();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+      boolean done = true;
+      try {
+        done = save(this);
+        if (done) {
+          removeSave(marker);
+          result.complete(null);
+        }
+      } catch (Throwable e) {
+        // failed saving stays pending, it will be replayed after the server restart
+        String nodePath = nodePath(workspace, path);
+        LOG.error("Error saving document " + nodePath + " (" + getKey() + ")", e);
+        metrics.saveErrors.increment();
+        if (config != null) {
+          config.setError("Error saving document. " + e.getMessage());
+          // Update cached (for replicated cache)
+          if (activeCache.get(editorKey(config)) != null) {
+            updateEditor(config);
+          }
+          fireError(config);
+        }
+        result.completeExceptionally(e);
+      } finally {
+        if (done) {
+          if (spooled != null) {
+            spooled.close();
+          }
+          saved(this);
+        }
+      }
+    }
+  }
+
   /**
    * Cloud Drive service with storage in JCR and with managed features.
    *
@@ -195,6 +615,8 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    * @param organization the organization
    * @param authenticator the authenticator
    * @param cacheService the cache service
+   * @param documentServer the Document Server client
+   * @param metrics the editor metrics
    * @param params the params
    * @throws ConfigurationException the configuration exception
    */
@@ -205,6 +627,8 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
                                      OrganizationService organization,
                                      Authenticator authenticator,
                                      CacheService cacheService,
+                                     DocumentServerClient documentServer,
+                                     EditorMetrics metrics,
                                      InitParams params)
       throws ConfigurationException {
     this.jcrService = jcrService;
@@ -213,28 +637,34 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
     this.finder = finder;
     this.organization = organization;
     this.authenticator = authenticator;
+    this.documentServer = documentServer;
+    this.metrics = metrics;
+
+    for (int i = 0; i < activeLocks.length; i++) {
+      activeLocks[i] = new ReentrantLock();
+    }
 
     this.activeCache = cacheService.getCacheInstance(CACHE_NAME);
     if (LOG.isDebugEnabled()) {
-      activeCache.addCacheListener(new CacheListener<String, ConcurrentHashMap<String, Config>>() {
+      activeCache.addCacheListener(new CacheListener<String, Config>() {
 
         @Override
-        public void onExpire(CacheListenerContext context, String key, ConcurrentHashMap<String, Config> obj) throws Exception {
+        public void onExpire(CacheListenerContext context, String key, Config obj) throws Exception {
           LOG.debug(CACHE_NAME + " onExpire > " + key + ": " + obj);
         }
 
         @Override
-        public void onRemove(CacheListenerContext context, String key, ConcurrentHashMap<String, Config> obj) throws Exception {
+        public void onRemove(CacheListenerContext context, String key, Config obj) throws Exception {
           LOG.debug(CACHE_NAME + " onRemove > " + key + ": " + obj);
         }
 
         @Override
-        public void onPut(CacheListenerContext context, String key, ConcurrentHashMap<String, Config> obj) throws Exception {
+        public void onPut(CacheListenerContext context, String key, Config obj) throws Exception {
           LOG.debug(CACHE_NAME + " onPut > " + key + ": " + obj);
         }
 
         @Override
-        public void onGet(CacheListenerContext context, String key, ConcurrentHashMap<String, Config> obj) throws Exception {
+        public void onGet(CacheListenerContext context, String key, Config obj) throws Exception {
           LOG.debug(CACHE_NAME + " onGet > " + key + ": " + obj);
         }
 
@@ -245,6 +675,21 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
       });
     }
 
+    this.usersCache = cacheService.getCacheInstance(USERS_CACHE_NAME);
+    // state versions follow the editors, including changes replicated from other cluster nodes
+    this.activeCache.addCacheListener(new EditorVersionListener());
+    this.usersCache.addCacheListener(new UsersVersionListener());
+    this.pathCache = cacheService.getCacheInstance(PATH_CACHE_NAME);
+
+    // near-caches of organization data, hits and misses available via the cache management (JMX)
+    this.userCache = cacheService.getCacheInstance(USER_CACHE_NAME);
+    this.langCache = cacheService.getCacheInstance(USER_LANG_CACHE_NAME);
+
+    this.identityCache = cacheService.getCacheInstance(IDENTITY_CACHE_NAME);
+
+    // near-cache of documents metadata, invalidated by JCR observation
+    this.metadataCache = cacheService.getCacheInstance(METADATA_CACHE_NAME);
+
     // predefined file types
     // TODO keep map of type configurations with need of conversion to modern format and back
     // FYI we enable editor for only modern office formats (e.g. docx or odt)
@@ -303,16 +748,26 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
     String dsAllowedHost = config.get(CONFIG_DS_ALLOWEDHOSTS);
     if (dsAllowedHost != null && !dsAllowedHost.isEmpty()) {
       Set<String> allowedhosts = new HashSet<>();
+      Set<AddressRange> allowedRanges = new HashSet<>();
       for (String ahost : dsAllowedHost.split(",")) {
         ahost = ahost.trim();
         if (!ahost.isEmpty()) {
-          allowedhosts.add(lowerCase(ahost));
+          // IP addresses and networks in CIDR notation (e.g. 192.168.1.0/24) will be matched by an address
+          AddressRange range = addressRange(ahost);
+          if (range != null) {
+            allowedRanges.add(range);
+          } else {
+            allowedhosts.add(lowerCase(ahost));
+          }
         }
       }
       this.documentserverAllowedhosts = Collections.unmodifiableSet(allowedhosts);
+      this.documentserverAllowedRanges = Collections.unmodifiableSet(allowedRanges);
     } else {
       this.documentserverAllowedhosts = Collections.emptySet();
+      this.documentserverAllowedRanges = Collections.emptySet();
     }
+    this.documentserverAddressesTTL = TimeUnit.SECONDS.toMillis(intConfig(CONFIG_DS_ADDRESSES_TTL, DS_ADDRESSES_TTL_DEFAULT));
 
     // base parameters for API
 
@@ -322,103 +777,773 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
     documentserverUrl.append(dsHost);
 
     this.uploadUrl = new StringBuilder(documentserverUrl).append("/FileUploader.ashx").toString();
+    this.commandServiceUrl = new StringBuilder(documentserverUrl).append("/coauthoring/CommandService.ashx").toString();
     this.documentserverUrl = new StringBuilder(documentserverUrl).append("/OfficeWeb/").toString();
+
+    // background tasks (savings, users sync, reaper) run in the container of this service
+    this.container = ExoContainerContext.getCurrentContainerIfPresent();
+
+    // background saving of documents
+    int saveThreads = intConfig(CONFIG_SAVE_THREADS, SAVE_THREADS_DEFAULT);
+    if (saveThreads <= 0) {
+      throw new ConfigurationException("Configuration of " + CONFIG_SAVE_THREADS + " should be greater than zero: "
+          + saveThreads);
+    }
+    int saveQueue = intConfig(CONFIG_SAVE_QUEUE, SAVE_QUEUE_DEFAULT);
+    if (saveQueue <= 0) {
+      throw new ConfigurationException("Configuration of " + CONFIG_SAVE_QUEUE + " should be greater than zero: " + saveQueue);
+    }
+    // When the queue is full, a saving will be rejected and then run by the caller (thus Document Server
+    // will wait as it was with synchronous saving)
+    this.saveExecutor = new ThreadPoolExecutor(saveThreads,
+                                               saveThreads,
+                                               60L,
+                                               TimeUnit.SECONDS,
+                                               new ArrayBlockingQueue<Runnable>(saveQueue),
+                                               new SaveThreadFactory());
+    this.saveExecutor.allowCoreThreadTimeOut(true);
+    this.downloadMemoryThreshold = intConfig(CONFIG_DOWNLOAD_MEMORY, DOWNLOAD_MEMORY_DEFAULT);
+
+    // merging of "being edited" statuses
+    this.statusBatchWindow = intConfig(CONFIG_STATUS_BATCH_WINDOW, STATUS_BATCH_WINDOW_DEFAULT);
+    if (statusBatchWindow > 0) {
+      this.syncExecutor = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "onlyoffice-status-sync");
+        t.setDaemon(true);
+        return t;
+      });
+    } else {
+      this.syncExecutor = null;
+    }
+
+    // rechecks of locked documents: savings waiting for unlock don't hold threads, they will be resumed by
+    // an unlock event or by the recheck
+    this.lockExecutor = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread t = new Thread(r, "onlyoffice-lock-wait");
+      t.setDaemon(true);
+      return t;
+    });
+
+    // recognition of retried saving statuses
+    final int statusDedupSize = intConfig(CONFIG_STATUS_DEDUP_SIZE, STATUS_DEDUP_SIZE_DEFAULT);
+    this.savings = new LinkedHashMap<String, CompletableFuture<Void>>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<Void>> eldest) {
+        return size() > statusDedupSize;
+      }
+    };
+
+    // document keys
+    String keyMode = config.get(CONFIG_DOCUMENT_KEY_MODE);
+    if (keyMode == null || (keyMode = keyMode.trim()).length() == 0 || keyMode.equalsIgnoreCase(DOCUMENT_KEY_CONTENT)) {
+      this.contentKeys = true;
+    } else if (keyMode.equalsIgnoreCase(DOCUMENT_KEY_RANDOM)) {
+      this.contentKeys = false;
+    } else {
+      throw new ConfigurationException("Configuration of " + CONFIG_DOCUMENT_KEY_MODE + " should be " + DOCUMENT_KEY_CONTENT
+          + " or " + DOCUMENT_KEY_RANDOM + ": " + keyMode);
+    }
+
+    // release of abandoned editors
+    this.reaperInterval = TimeUnit.SECONDS.toMillis(intConfig(CONFIG_REAPER_INTERVAL, REAPER_INTERVAL_DEFAULT));
+    this.reaperIdleTime = TimeUnit.SECONDS.toMillis(intConfig(CONFIG_REAPER_IDLE_TIME, REAPER_IDLE_TIME_DEFAULT));
+
+    // delivery of events to listeners
+    this.listenersAsync = Boolean.parseBoolean(config.get(CONFIG_LISTENERS_ASYNC));
+    this.listenersQueueSize = intConfig(CONFIG_LISTENERS_QUEUE, LISTENERS_QUEUE_DEFAULT);
+    this.listenersQueueTimeout = intConfig(CONFIG_LISTENERS_QUEUE_TIMEOUT, LISTENERS_QUEUE_TIMEOUT_DEFAULT);
+
+    // gauges of the metrics read this service caches
+    metrics.setEditors(this);
   }
 
   /**
-   * {@inheritDoc}
+   * Increase state version of a document when its editors change in the cache, locally or in another cluster
+   * node (replicated cache).
    */
-  @Override
-  public void addListener(OnlyofficeEditorListener listener) {
-    this.listeners.add(listener);
+  protected class EditorVersionListener implements CacheListener<String, Config> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onExpire(CacheListenerContext context, String editorKey, Config obj) throws Exception {
+      stateChanged(editorKey);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onRemove(CacheListenerContext context, String editorKey, Config obj) throws Exception {
+      stateChanged(editorKey);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onPut(CacheListenerContext context, String editorKey, Config obj) throws Exception {
+      stateChanged(editorKey);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onGet(CacheListenerContext context, String editorKey, Config obj) throws Exception {
+      // nothing
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onClearCache(CacheListenerContext context) throws Exception {
+      stateVersions.clear();
+    }
+
+    /**
+     * Increase state version of the editor's document (if it has a version).
+     *
+     * @param editorKey the editor key
+     */
+    protected void stateChanged(String editorKey) {
+      int i = editorKey.indexOf('/');
+      String key = i > 0 ? editorKey.substring(0, i) : editorKey;
+      stateVersions.computeIfPresent(key, (k, v) -> {
+        v.incrementAndGet();
+        return v;
+      });
+    }
   }
 
   /**
-   * {@inheritDoc}
+   * Remove state version of a document when it's removed from the cache of editing documents users.
    */
-  @Override
-  public void removeListener(OnlyofficeEditorListener listener) {
-    this.listeners.remove(listener);
+  protected class UsersVersionListener implements CacheListener<String, HashSet<String>> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onExpire(CacheListenerContext context, String key, HashSet<String> obj) throws Exception {
+      stateVersions.remove(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onRemove(CacheListenerContext context, String key, HashSet<String> obj) throws Exception {
+      stateVersions.remove(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onPut(CacheListenerContext context, String key, HashSet<String> obj) throws Exception {
+      stateVersions.computeIfPresent(key, (k, v) -> {
+        v.incrementAndGet();
+        return v;
+      });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onGet(CacheListenerContext context, String key, HashSet<String> obj) throws Exception {
+      // nothing
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onClearCache(CacheListenerContext context) throws Exception {
+      stateVersions.clear();
+    }
   }
 
   /**
-   * {@inheritDoc}
+   * Invalidate cached user on its change in organization service.
    */
-  @Override
-  public Config getEditor(String userId, String workspace, String path) throws OnlyofficeEditorException, RepositoryException {
-    return getEditor(userId, nodePath(workspace, path), false);
+  protected class UserCacheListener extends UserEventListener {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void postSave(User user, boolean isNew) throws Exception {
+      if (!isNew) {
+        invalidateUser(user.getUserName());
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void postDelete(User user) throws Exception {
+      invalidateUser(user.getUserName());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void postSetEnabled(User user) throws Exception {
+      invalidateUser(user.getUserName());
+    }
   }
 
   /**
-   * {@inheritDoc}
+   * Invalidate cached user language on its profile change in organization service.
    */
-  public Config getEditorByKey(String userId, String key) throws OnlyofficeEditorException, RepositoryException {
-    ConcurrentHashMap<String, Config> configs = activeCache.get(key);
-    if (configs != null) {
-      Config config = configs.get(userId);
-      if (config != null) {
-        validateUser(userId, config);
-        return config;
-      }
+  protected class UserProfileCacheListener extends UserProfileEventListener {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void postSave(UserProfile profile, boolean isNew) throws Exception {
+      langCache.remove(profile.getUserName());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void postDelete(UserProfile profile) throws Exception {
+      langCache.remove(profile.getUserName());
     }
-    return null;
   }
 
   /**
-   * Gets the editor.
+   * Invalidate cached user identity on its membership change in organization service.
+   */
+  protected class MembershipCacheListener extends MembershipEventListener {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void postSave(Membership m, boolean isNew) throws Exception {
+      identityCache.remove(m.getUserName());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void postDelete(Membership m) throws Exception {
+      identityCache.remove(m.getUserName());
+    }
+  }
+
+  /**
+   * Task running on behalf of a user, see {@link OnlyofficeEditorServiceImpl#runAs(String, UserTask)}.
    *
-   * @param userId the user id
-   * @param nodePath the node path
-   * @param createCoEditing if <code>true</code> and has no editor for given user, create a copy for
-   *          co-editing if document already editing by other users
-   * @return the editor
-   * @throws OnlyofficeEditorException the onlyoffice editor exception
-   * @throws RepositoryException the repository exception
+   * @param <T> the result type
    */
-  protected Config getEditor(String userId, String nodePath, boolean createCoEditing) throws OnlyofficeEditorException,
-                                                                                      RepositoryException {
-    ConcurrentHashMap<String, Config> configs = activeCache.get(nodePath);
-    if (configs != null) {
-      Config config = configs.get(userId);
-      if (config == null && createCoEditing) {
-        // copy editor for this user from another entry in the configs map
+  @FunctionalInterface
+  protected interface UserTask<T> {
+
+    /**
+     * Run the task.
+     *
+     * @return the result
+     * @throws OnlyofficeEditorException the onlyoffice editor exception
+     * @throws RepositoryException the repository exception
+     */
+    T run() throws OnlyofficeEditorException, RepositoryException;
+  }
+
+  /**
+   * Observer of unlocking of documents in a workspace. A single listener (and a single system session) exists
+   * for a workspace, it resumes savings waiting for unlocking of a node (see {@link #lockWaiters}).
+   */
+  protected class UnlockListener implements EventListener {
+
+    /** The workspace. */
+    protected final String       workspace;
+
+    /** The system session used for observation. */
+    protected Session            session;
+
+    /** The observation manager. */
+    protected ObservationManager observation;
+
+    /**
+     * Instantiates a new unlock listener.
+     *
+     * @param workspace the workspace
+     */
+    protected UnlockListener(String workspace) {
+      this.workspace = workspace;
+    }
+
+    /**
+     * Start observing removal of lock properties in the workspace.
+     *
+     * @throws RepositoryException the repository exception
+     */
+    protected synchronized void register() throws RepositoryException {
+      if (observation == null) {
+        Session session = jcrService.getCurrentRepository().getSystemSession(workspace);
         try {
-          Config another = configs.values().iterator().next();
-          User user = getUser(userId); // and use this user language
-          if (user != null) {
-            config = another.forUser(user.getUserName(), user.getFirstName(), user.getLastName(), getUserLang(userId));
-            Config existing = configs.putIfAbsent(userId, config);
-            if (existing == null) {
-              // need update the configs in the cache (for replicated cache)
-              activeCache.put(nodePath, configs);
-              activeCache.put(config.getDocument().getKey(), configs);
-            } else {
-              config = existing;
-            }
-            fireGet(config);
-          } else {
-            LOG.warn("Attempt to obtain document editor (" + nodePath(another) + ") under not existing user " + userId);
-            throw new BadParameterException("User not found for " + another.getDocument().getTitle());
+          ObservationManager observation = session.getWorkspace().getObservationManager();
+          observation.addEventListener(this,
+                                       Event.PROPERTY_REMOVED,
+                                       "/",
+                                       true,
+                                       null,
+                                       new String[] { "mix:lockable" },
+                                       false);
+          this.session = session;
+          this.observation = observation;
+        } catch (RepositoryException e) {
+          session.logout();
+          throw e;
+        }
+      }
+    }
+
+    /**
+     * Stop observing the workspace.
+     */
+    protected synchronized void unregister() {
+      if (observation != null) {
+        try {
+          observation.removeEventListener(this);
+        } catch (RepositoryException e) {
+          LOG.warn("Error removing unlock listener of " + workspace, e);
+        }
+        session.logout();
+        observation = null;
+        session = null;
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEvent(EventIterator events) {
+      while (events.hasNext()) {
+        Event event = events.nextEvent();
+        try {
+          String path = event.getPath();
+          if (path.endsWith(LOCK_OWNER_PROPERTY)) {
+            unlocked(nodePath(workspace, path.substring(0, path.length() - LOCK_OWNER_PROPERTY.length())));
           }
-        } catch (NoSuchElementException e) { // if configs was cleaned by closing all active editors
-          config = null;
+        } catch (RepositoryException e) {
+          LOG.warn("Error reading unlock event in " + workspace, e);
         }
-      } else if (createCoEditing) {
-        // otherwise: config already obtained
-        fireGet(config);
       }
-      return config; // can be null
     }
-    return null;
   }
 
   /**
-   * {@inheritDoc}
+   * Metadata of a document used in its editor config.
+   */
+  protected static class DocumentMetadata implements Serializable {
+
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 3L;
+
+    /** The node UUID, <code>null</code> for not referenceable node. */
+    protected final String    uuid;
+
+    /** The node path, a moved node will not use this metadata. */
+    protected final String    path;
+
+    /** The title. */
+    protected final String    title;
+
+    /** The file type, <code>null</code> if not supported. */
+    protected final String    fileType;
+
+    /** The created date. */
+    protected final Calendar  created;
+
+    /**
+     * Instantiates a new document metadata.
+     *
+     * @param uuid the node UUID
+     * @param path the node path
+     * @param title the title
+     * @param fileType the file type
+     * @param created the created
+     */
+    protected DocumentMetadata(String uuid, String path, String title, String fileType, Calendar created) {
+      this.uuid = uuid;
+      this.path = path;
+      this.title = title;
+      this.fileType = fileType;
+      this.created = created;
+    }
+  }
+
+  /**
+   * Invalidate cached metadata of documents on changes of their properties and removals in a workspace. Only
+   * events of nt:file nodes and Dublin Core content will be delivered to the listener. Metadata of
+   * referenceable nodes is mapped by UUID and checked against the node path when used, thus their moves and
+   * removals need no events. Observation in eXo JCR is local: every cluster node observes changes saved in it
+   * and the cache invalidation propagates them to other nodes.
+   */
+  protected class MetadataListener implements EventListener {
+
+    /** The workspace. */
+    protected final String        workspace;
+
+    /** The listener of removed nodes, it's registered with own filter. */
+    protected final EventListener removals = this::onRemove;
+
+    /** The system session used for observation. */
+    protected Session             session;
+
+    /** The observation manager. */
+    protected ObservationManager  observation;
+
+    /**
+     * Instantiates a new metadata listener.
+     *
+     * @param workspace the workspace
+     */
+    protected MetadataListener(String workspace) {
+      this.workspace = workspace;
+    }
+
+    /**
+     * Start observing the workspace.
+     *
+     * @throws RepositoryException the repository exception
+     */
+    protected synchronized void register() throws RepositoryException {
+      Session session = jcrService.getCurrentRepository().getSystemSession(workspace);
+      try {
+        ObservationManager observation = session.getWorkspace().getObservationManager();
+        // metadata properties belong to nt:file node and its content with Dublin Core (dc:title), content
+        // without it (such as jcr:data updates of nt:resource) will not be observed
+        observation.addEventListener(this,
+                                     Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED,
+                                     "/",
+                                     true,
+                                     null,
+                                     new String[] { "nt:file", "dc:elementSet" },
+                                     false);
+        // in JCR 1.0 a moved or renamed node (e.g. WebDAV MOVE) is removed from its old path and added to a
+        // new one: metadata of not referenceable nodes cached by the old path should be removed. Removal of a
+        // node is reported also for its descendants, thus removal of nt:file node is observed via its content.
+        try {
+          observation.addEventListener(removals,
+                                       Event.NODE_REMOVED,
+                                       "/",
+                                       true,
+                                       null,
+                                       new String[] { "nt:file" },
+                                       false);
+        } catch (RepositoryException e) {
+          observation.removeEventListener(this);
+          throw e;
+        }
+        this.session = session;
+        this.observation = observation;
+      } catch (RepositoryException e) {
+        session.logout();
+        throw e;
+      }
+    }
+
+    /**
+     * Stop observing the workspace.
+     */
+    protected synchronized void unregister() {
+      if (observation != null) {
+        try {
+          observation.removeEventListener(this);
+          observation.removeEventListener(removals);
+        } catch (RepositoryException e) {
+          LOG.warn("Error removing metadata listener of " + workspace, e);
+        }
+        session.logout();
+        observation = null;
+        session = null;
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEvent(EventIterator events) {
+      onChange(events);
+    }
+
+    /**
+     * Invalidate cached metadata of removed documents.
+     *
+     * @param events the events
+     */
+    protected void onRemove(EventIterator events) {
+      // metadata of referenceable documents stays cached by UUID, but it will not be used by moved nodes
+      // (see DocumentMetadata.path)
+      for (String path : paths(events)) {
+        metadataCache.remove(metadataKey(workspace, path));
+      }
+    }
+
+    /**
+     * Paths of documents in events. Content property (dc:title) belongs to jcr:content child of a document.
+     *
+     * @param events the events
+     * @return the set of paths
+     */
+    protected Set<String> paths(EventIterator events) {
+      Set<String> paths = new HashSet<String>();
+      while (events.hasNext()) {
+        try {
+          Event event = events.nextEvent();
+          String path = event.getPath();
+          String nodePath;
+          if (event.getType() == Event.NODE_REMOVED) {
+            nodePath = path;
+          } else {
+            int nameIndex = path.lastIndexOf('/');
+            if (!METADATA_PROPERTIES.contains(path.substring(nameIndex + 1))) {
+              continue;
+            }
+            nodePath = path.substring(0, nameIndex);
+          }
+          if (nodePath.endsWith("/jcr:content")) {
+            nodePath = nodePath.substring(0, nodePath.length() - 12);
+          }
+          paths.add(nodePath.length() > 0 ? nodePath : "/");
+        } catch (RepositoryException e) {
+          LOG.warn("Error reading metadata change event in " + workspace, e);
+        }
+      }
+      return paths;
+    }
+
+    /**
+     * Invalidate cached metadata of documents with changed properties.
+     *
+     * @param events the events
+     */
+    protected void onChange(EventIterator events) {
+      Set<String> paths = paths(events);
+      for (String path : paths) {
+        metadataCache.remove(metadataKey(workspace, path));
+        try {
+          Item item = session.getItem(path);
+          if (item.isNode() && ((Node) item).isNodeType("mix:referenceable")) {
+            metadataCache.remove(metadataKey(workspace, ((Node) item).getUUID()));
+          }
+        } catch (PathNotFoundException e) {
+          // already removed
+        } catch (RepositoryException e) {
+          LOG.warn("Error reading document with changed metadata " + nodePath(workspace, path), e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Range of IP addresses defined by a network address and a prefix length (CIDR notation). Single address
+   * is a range with full length prefix.
+   */
+  protected static class AddressRange {
+
+    /** The network address bytes. */
+    protected final byte[] network;
+
+    /** The prefix length in bits. */
+    protected final int    prefix;
+
+    /**
+     * Instantiates a new address range.
+     *
+     * @param network the network
+     * @param prefix the prefix
+     */
+    protected AddressRange(byte[] network, int prefix) {
+      this.network = network;
+      this.prefix = prefix;
+    }
+
+    /**
+     * Check if given address belongs to this range.
+     *
+     * @param address the address
+     * @return true, if successful
+     */
+    protected boolean contains(InetAddress address) {
+      byte[] bytes = address.getAddress();
+      if (bytes.length != network.length) {
+        return false;
+      }
+      int fullBytes = prefix / 8;
+      for (int i = 0; i < fullBytes; i++) {
+        if (bytes[i] != network[i]) {
+          return false;
+        }
+      }
+      int restBits = prefix % 8;
+      if (restBits > 0) {
+        int mask = (0xFF << (8 - restBits)) & 0xFF;
+        return (bytes[fullBytes] & mask) == (network[fullBytes] & mask);
+      }
+      return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj) {
+      if (obj instanceof AddressRange) {
+        AddressRange other = (AddressRange) obj;
+        return prefix == other.prefix && Arrays.equals(network, other.network);
+      }
+      return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(network) * 31 + prefix;
+    }
+  }
+
+  /**
+   * Thread factory of background saving of documents.
+   */
+  protected static class SaveThreadFactory implements ThreadFactory {
+
+    /** The thread number. */
+    protected final AtomicInteger threadNumber = new AtomicInteger(1);
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "onlyoffice-save-" + threadNumber.getAndIncrement());
+      t.setDaemon(true);
+      return t;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void addListener(OnlyofficeEditorListener listener) {
+    if (listenersAsync && !listener.isSynchronous()) {
+      this.listeners.add(new AsyncEditorListener(listener, listenersQueueSize, listenersQueueTimeout));
+    } else {
+      this.listeners.add(listener);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void removeListener(OnlyofficeEditorListener listener) {
+    for (OnlyofficeEditorListener l : listeners) {
+      if (l == listener) {
+        this.listeners.remove(l);
+      } else if (l instanceof AsyncEditorListener) {
+        AsyncEditorListener async = (AsyncEditorListener) l;
+        if (async.getListener() == listener && this.listeners.remove(async)) {
+          async.shutdown(0);
+        }
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Config getEditor(String userId, String workspace, String path) throws OnlyofficeEditorException, RepositoryException {
+    return getEditor(userId, nodePath(workspace, path), false);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Config getEditorByKey(String userId, String key) throws OnlyofficeEditorException, RepositoryException {
+    Config config = activeCache.get(editorKey(key, userId));
+    if (config != null) {
+      validateUser(userId, config);
+      return config;
+    }
+    return null;
+  }
+
+  /**
+   * Gets the editor.
+   *
+   * @param userId the user id
+   * @param nodePath the node path
+   * @param createCoEditing if <code>true</code> and has no editor for given user, create a copy for
+   *          co-editing if document already editing by other users
+   * @return the editor
+   * @throws OnlyofficeEditorException the onlyoffice editor exception
+   * @throws RepositoryException the repository exception
+   */
+  protected Config getEditor(String userId, String nodePath, boolean createCoEditing) throws OnlyofficeEditorException,
+                                                                                      RepositoryException {
+    ConcurrentHashMap<String, Config> configs = activeEditorsByPath(nodePath);
+    if (configs != null) {
+      Config config = configs.get(userId);
+      if (config == null && createCoEditing) {
+        // copy editor for this user from another entry in the configs map
+        try {
+          Config another = configs.values().iterator().next();
+          User user = getUser(userId); // and use this user language
+          if (user != null) {
+            config = another.forUser(user.getUserName(), user.getFirstName(), user.getLastName(), getUserLang(userId));
+            // add only this user editor in the cache (for replicated cache)
+            Config existing = addEditor(nodePath, config);
+            if (existing != null) {
+              config = existing;
+            }
+            fireGet(config);
+          } else {
+            LOG.warn("Attempt to obtain document editor (" + nodePath(another) + ") under not existing user " + userId);
+            throw new BadParameterException("User not found for " + another.getDocument().getTitle());
+          }
+        } catch (NoSuchElementException e) { // if configs was cleaned by closing all active editors
+          config = null;
+        }
+      } else if (createCoEditing) {
+        // otherwise: config already obtained
+        fireGet(config);
+      }
+      return config; // can be null
+    }
+    return null;
+  }
+
+  /**
+   * {@inheritDoc}
    */
   @Override
   public Config createEditor(String schema, String host, String userId, String workspace, String path)
                                                                                                        throws OnlyofficeEditorException,
                                                                                                        RepositoryException {
+    long start = System.nanoTime();
     Node node = node(workspace, path);
     String nodePath = nodePath(workspace, path);
 
@@ -428,11 +1553,13 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
     }
 
     Config config = getEditor(userId, nodePath, true);
+    boolean created = false;
     if (config == null) {
-      // we should care about concurrent calls here
+      // we should care about concurrent calls here, but only for the same document
+      ReentrantLock activeLock = activeLock(nodePath);
       activeLock.lock();
       try {
-        ConcurrentHashMap<String, Config> configs = activeCache.get(nodePath);
+        ConcurrentHashMap<String, Config> configs = activeEditorsByPath(nodePath);
         if (configs != null) {
           config = getEditor(userId, nodePath, true);
           if (config == null) {
@@ -445,13 +1572,14 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
           // Build a new editor config and document key
           User user = getUser(userId);
 
-          String fileType = fileType(node);
+          DocumentMetadata metadata = metadata(workspace, node);
+          String fileType = metadata.fileType;
           String docType = documentType(fileType);
 
           Config.Builder builder = Config.editor(documentserverUrl, workspace, path, docType);
           builder.author(userId);
           builder.fileType(fileType);
-          builder.created(nodeCreated(node));
+          builder.created(metadata.created);
           try {
             builder.folder(node.getParent().getName());
           } catch (AccessDeniedException e) {
@@ -472,12 +1600,12 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
           }
           builder.lang(getUserLang(userId));
           builder.mode("edit");
-          builder.title(nodeTitle(node));
+          builder.title(metadata.title);
           builder.userId(user.getUserName());
           builder.userFirstName(user.getFirstName());
           builder.userLastName(user.getLastName());
 
-          String key = generateId(workspace, path).toString();
+          String key = documentKey(node, workspace, path);
 
           builder.key(key);
 
@@ -486,20 +1614,17 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
 
           config = builder.build();
 
-          // Create users' config map and add first user
-          configs = new ConcurrentHashMap<String, Config>();
-          configs.put(userId, config);
-
-          // mapping by node path for getEditor()
-          activeCache.put(nodePath, configs);
-          // mapping by unique file key for updateDocument()
-          activeCache.put(key, configs);
+          // add first user editor: mapped by unique file key for updateDocument() and by node path for
+          // getEditor()
+          addEditor(nodePath, config);
+          created = true;
         }
       } finally {
         activeLock.unlock();
       }
       fireCreated(config);
     }
+    metrics.createEditor(created).recordSince(start);
     return config;
   }
 
@@ -509,39 +1634,28 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
   @SuppressWarnings("deprecation")
   @Override
   public DocumentContent getContent(String userId, String key) throws OnlyofficeEditorException, RepositoryException {
-    ConcurrentHashMap<String, Config> configs = activeCache.get(key);
+    ConcurrentHashMap<String, Config> configs = activeEditors(key);
     if (configs != null) {
+      activities.put(key, System.currentTimeMillis());
       Config config = configs.get(userId);
       if (config != null) {
         validateUser(userId, config);
 
-        // use user session here:
-        // remember real context state and session provider to restore them at the end
-        ConversationState contextState = ConversationState.getCurrent();
-        SessionProvider contextProvider = sessionProviders.getSessionProvider(null);
-        try {
-          // XXX we want do all the job under actual (requester) user here
-          Identity userIdentity = userIdentity(userId);
-          if (userIdentity != null) {
-            ConversationState state = new ConversationState(userIdentity);
-            // Keep subject as attribute in ConversationState.
-            state.setAttribute(ConversationState.SUBJECT, userIdentity.getSubject());
-            ConversationState.setCurrent(state);
-            SessionProvider userProvider = new SessionProvider(state);
-            sessionProviders.setSessionProvider(null, userProvider);
-          } else {
-            LOG.warn("User identity not found " + userId + " for content of " + config.getDocument().getKey() + " "
-                + config.getPath());
-            throw new OnlyofficeEditorException("User identity not found " + userId);
-          }
-
+        // XXX we want do all the job under actual (requester) user here
+        return runAs(userId, () -> {
           // work in user session
           Node node = node(config.getWorkspace(), config.getPath());
           Node content = nodeContent(node);
 
           final String mimeType = content.getProperty("jcr:mimeType").getString();
-          // data stream will be closed when EoF will be reached
-          final InputStream data = new AutoCloseInputStream(content.getProperty("jcr:data").getStream());
+          final Calendar lastModified = content.hasProperty("jcr:lastModified") ? content.getProperty("jcr:lastModified")
+                                                                                            .getDate()
+                                                                                 : null;
+          Property dataProperty = data(content);
+          final long length = dataProperty.getLength();
+          // the value stays readable after the session: its data will be read by the consumer
+          final Value data = dataProperty.getValue();
+          final String nodePath = nodePath(config);
           return new DocumentContent() {
             @Override
             public String getType() {
@@ -550,14 +1664,38 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
 
             @Override
             public InputStream getData() {
-              return data;
+              try {
+                return data.getStream();
+              } catch (RepositoryException e) {
+                throw new IllegalStateException("Error reading content of " + nodePath, e);
+              }
+            }
+
+            @Override
+            public long transfer(OutputStream output, long offset, long length) throws IOException {
+              if (data instanceof ReadableBinaryValue) {
+                // a value of file storage will be transferred by the file channel, of other storages (e.g.
+                // database) it's written from the value data
+                try {
+                  return ((ReadableBinaryValue) data).read(output, length >= 0 ? length : this.getLength() - offset, offset);
+                } catch (RepositoryException e) {
+                  throw new IOException("Error reading content of " + nodePath, e);
+                }
+              }
+              return -1;
+            }
+
+            @Override
+            public long getLength() {
+              return length;
+            }
+
+            @Override
+            public Calendar getLastModified() {
+              return lastModified;
             }
           };
-        } finally {
-          // restore context env
-          ConversationState.setCurrent(contextState);
-          sessionProviders.setSessionProvider(null, contextProvider);
-        }
+        });
       } else {
         throw new BadParameterException("User editor not found or already closed " + userId);
       }
@@ -566,25 +1704,91 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
     }
   }
 
+  /**
+   * Resolve addresses of the Document Server and allowed hosts. If a host cannot be resolved, already known
+   * addresses will be kept, thus a DNS failure will not deny the Document Server requests.
+   */
+  protected void resolveDocumentServer() {
+    Set<String> dsHosts = new LinkedHashSet<String>();
+    dsHosts.add(documentserverHostName);
+    dsHosts.addAll(documentserverAllowedhosts);
+    Set<String> addresses = new HashSet<String>();
+    boolean resolved = true;
+    for (String dsHost : dsHosts) {
+      try {
+        for (InetAddress address : InetAddress.getAllByName(dsHost)) {
+          addresses.add(address.getHostAddress());
+        }
+      } catch (UnknownHostException e) {
+        LOG.warn("Cannot resolve Document Server host " + dsHost + ": " + e.getMessage());
+        resolved = false;
+      }
+    }
+    if (!resolved) {
+      addresses.addAll(documentserverAddresses);
+    }
+    if (!addresses.equals(documentserverAddresses)) {
+      documentserverAddresses = Collections.unmodifiableSet(addresses);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Document Server addresses: " + addresses);
+      }
+    }
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public boolean canDownloadBy(String hostName) {
     if (documentserverAccessOnly) {
+      if (hostName == null) {
+        return false;
+      }
       // #19 support advanced configuration of DS's allowed hosts
-      return documentserverHostName.equalsIgnoreCase(hostName) || documentserverAllowedhosts.contains(lowerCase(hostName));
+      if (documentserverHostName.equalsIgnoreCase(hostName) || documentserverAllowedhosts.contains(lowerCase(hostName))) {
+        return true;
+      }
+      // if it's an IP address, match it with resolved DS addresses and allowed networks, without DNS
+      InetAddress address = ipAddress(hostName);
+      if (address != null) {
+        if (documentserverAddresses.contains(address.getHostAddress())) {
+          return true;
+        }
+        for (AddressRange range : documentserverAllowedRanges) {
+          if (range.contains(address)) {
+            return true;
+          }
+        }
+      }
+      return false;
     }
     return true;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getStateVersion(String key) {
+    AtomicLong version = stateVersions.get(key);
+    if (version == null) {
+      if (usersCache.get(key) != null) {
+        version = stateVersions.computeIfAbsent(key, k -> new AtomicLong(stateVersionBase + (System.currentTimeMillis() << 16)));
+      } else {
+        return -1;
+      }
+    }
+    return version.get();
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public ChangeState getState(String userId, String key) throws OnlyofficeEditorException {
-    ConcurrentHashMap<String, Config> configs = activeCache.get(key);
+    ConcurrentHashMap<String, Config> configs = activeEditors(key);
     if (configs != null) {
+      activities.put(key, System.currentTimeMillis());
       Config config = configs.get(userId);
       if (config != null) {
         validateUser(userId, config);
@@ -603,9 +1807,65 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    */
   @Override
   public void updateDocument(String userId, DocumentStatus status) throws OnlyofficeEditorException, RepositoryException {
+    String savingId = savingId(status);
+    if (savingId != null) {
+      // The Document Server retries a status when our response was slow or failed: a retried status joins
+      // already started (or done) saving instead of downloading the document again.
+      CompletableFuture<Void> saving = new CompletableFuture<Void>();
+      CompletableFuture<Void> started;
+      synchronized (savings) {
+        started = savings.get(savingId);
+        if (started == null || started.isCompletedExceptionally()) {
+          // failed saving can be tried again
+          savings.put(savingId, saving);
+          started = null;
+        }
+      }
+      if (started != null) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Onlyoffice status " + status.getStatus() + " for " + status.getKey() + " already "
+              + (started.isDone() ? "processed" : "in progress") + ", user " + userId);
+        }
+      } else {
+        try {
+          CompletableFuture<Void> result = processStatus(userId, status);
+          if (result != null) {
+            result.whenComplete((r, e) -> {
+              if (e != null) {
+                saving.completeExceptionally(e);
+              } else {
+                saving.complete(null);
+              }
+            });
+          } else {
+            saving.complete(null);
+          }
+        } catch (Throwable e) {
+          saving.completeExceptionally(e);
+          throw e;
+        }
+      }
+    } else {
+      processStatus(userId, status);
+    }
+  }
+
+  /**
+   * Process document status sent by the Document Server.
+   *
+   * @param userId the user id
+   * @param status the status
+   * @return the future of document saving, <code>null</code> if the status doesn't save the document in
+   *         background
+   * @throws OnlyofficeEditorException the onlyoffice editor exception
+   * @throws RepositoryException the repository exception
+   */
+  protected CompletableFuture<Void> processStatus(String userId, DocumentStatus status) throws OnlyofficeEditorException,
+                                                                                        RepositoryException {
     String key = status.getKey();
-    ConcurrentHashMap<String, Config> configs = activeCache.get(key);
+    ConcurrentHashMap<String, Config> configs = activeEditors(key);
     if (configs != null) {
+      activities.put(key, System.currentTimeMillis());
       Config config = configs.get(userId);
       if (config != null) {
         validateUser(userId, config);
@@ -623,10 +1883,15 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
               + Arrays.toString(status.getUsers()) + " << Local file: " + nodePath);
         }
 
+        if (statusCode != 1) {
+          // apply a "being edited" status waiting for users sync before other statuses: users it reports
+          // could leave or join (and the editors UI should know it) before the document closed or saved
+          syncPending(key);
+        }
+
         if (statusCode == 0) {
           // Onlyoffice doesn't know about such document: we clean our records and raise an error
-          activeCache.remove(key);
-          activeCache.remove(nodePath);
+          removeEditors(key, nodePath);
           LOG.warn("Received Onlyoffice status: no document with the key identifier could be found. Key: " + key + ". Document "
               + nodePath);
           throw new OnlyofficeEditorException("Error editing document: document ID not found");
@@ -635,18 +1900,20 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
           // (2) we could do nothing at this point, indeed need study how Onlyoffice behave in different
           // situations when user leave page open or browser hangs/crashes/killed - it still could be useful
           // here to make a cleanup
-          // Sync users from the status to active config: this should close configs of gone users
-          String[] users = status.getUsers();
-          if (syncUsers(configs, users)) {
-            // Update cached (for replicated cache)
-            activeCache.put(key, configs);
-            activeCache.put(nodePath, configs);
+          // Sync users from the status to active config: this should close configs of gone users, changed
+          // editors will be updated in the cache (for replicated cache). Statuses coming in a burst (when
+          // users join and leave) will be merged: only latest users will be synced.
+          if (syncExecutor != null) {
+            syncUsersLater(key, status);
+          } else {
+            syncUsers(configs, status.getUsers());
           }
         } else if (statusCode == 2) {
-          // save as "document is ready for saving" (2)
-          download(config, status);
-          activeCache.remove(key);
-          activeCache.remove(nodePath);
+          // save as "document is ready for saving" (2): the saving will be persisted as pending and done in
+          // background, the Document Server doesn't need wait for it, errors will be reported to editor users
+          // via the config error. If this server will stop before the saving done, it will be replayed.
+          String marker = persistSave(config.getWorkspace(), config.getPath(), status);
+          return saveAsync(new DocumentSave(config, config.getWorkspace(), config.getPath(), status, marker));
         } else if (statusCode == 3) {
           // it's an error of saving in Onlyoffice
           // we sync to remote editors list first
@@ -656,26 +1923,26 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
             String url = status.getUrl();
             if (url != null && url.length() > 0) {
               // if URL available then we can download it assuming it's last successful modification
-              // the same behaviour as for status (2)
-              download(config, status);
-              activeCache.remove(key);
-              activeCache.remove(nodePath);
-              config.setError("Error in editor. Last change was successfully saved");
-              // XXX even having it saved we don't known exactly what is it, thus user should see the editor
-              // again and decide about content (e.g. it can download it manually from Onlyoffice)
-              // config.close(); // close for use in listeners
-              // fireSaved(config);
-              fireError(config);
-              LOG.warn("Received Onlyoffice error of saving document. Key: " + key + ". Users: "
-                  + Arrays.toString(status.getUsers()) + ". Last change was successfully saved for " + nodePath);
+              // the same behaviour as for status (2), the editor error will be reported after the saving
+              String marker = persistSave(config.getWorkspace(), config.getPath(), status);
+              DocumentSave save = new DocumentSave(config, config.getWorkspace(), config.getPath(), status, marker);
+              return saveAsync(save).thenRun(() -> {
+                config.setError("Error in editor. Last change was successfully saved");
+                // XXX even having it saved we don't known exactly what is it, thus user should see the editor
+                // again and decide about content (e.g. it can download it manually from Onlyoffice)
+                // config.close(); // close for use in listeners
+                // fireSaved(config);
+                fireError(config);
+                LOG.warn("Received Onlyoffice error of saving document. Key: " + key + ". Users: "
+                    + Arrays.toString(status.getUsers()) + ". Last change was successfully saved for " + nodePath);
+              });
             } else {
               // if error without content URL and last user: it's error state
               LOG.warn("Received Onlyoffice error of saving document without changes URL. Key: " + key + ". Users: "
                   + Arrays.toString(status.getUsers()) + ". Document " + nodePath);
               config.setError("Error in editor. No changes saved");
               // Update cached (for replicated cache)
-              activeCache.put(key, configs);
-              activeCache.put(nodePath, configs);
+              updateEditor(config);
               fireError(config);
               // TODO no sense to throw an ex here: it will be caught by the caller (REST) and returned to
               // the Onlyoffice server as 500 response, but it doesn't deal with it and will try send the
@@ -687,21 +1954,20 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
                 + Arrays.toString(status.getUsers()) + ". Document " + nodePath);
             config.setError("Error in editor. Document still in editing state");
             // Update cached (for replicated cache)
-            activeCache.put(key, configs);
-            activeCache.put(nodePath, configs);
+            updateEditor(config);
             fireError(config);
           }
         } else if (statusCode == 4) {
           // user(s) haven't changed the document but closed it: sync users to fire onLeaved event(s)
           syncUsers(configs, status.getUsers());
           // and remove this document from active configs
-          activeCache.remove(key);
-          activeCache.remove(nodePath);
+          removeEditors(key, nodePath);
         } else {
           // warn unexpected status, wait for next status
           LOG.warn("Received Onlyoffice unexpected status. Key: " + key + ". URL: " + status.getUrl() + ". Users: "
               + status.getUsers() + ". Document " + nodePath);
         }
+        return null;
       } else {
         throw new BadParameterException("User editor not found " + userId);
       }
@@ -715,6 +1981,73 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    */
   @Override
   public void start() {
+    // invalidate user near-caches on changes in organization
+    organization.getUserHandler().addUserEventListener(new UserCacheListener());
+    organization.getUserProfileHandler().addUserProfileEventListener(new UserProfileCacheListener());
+    organization.getMembershipHandler().addMembershipEventListener(new MembershipCacheListener());
+
+    // resolve Document Server hosts to check its requests by IP without DNS lookups
+    if (documentserverAccessOnly) {
+      resolveDocumentServer();
+    }
+
+    // observe changes of documents metadata in all workspaces, thus changes saved in this cluster node will
+    // invalidate metadata cached in other nodes
+    try {
+      for (String workspace : jcrService.getCurrentRepository().getWorkspaceNames()) {
+        MetadataListener listener = new MetadataListener(workspace);
+        try {
+          listener.register();
+          metadataListeners.put(workspace, listener);
+        } catch (RepositoryException e) {
+          LOG.warn("Cannot observe metadata of documents in " + workspace + ". Metadata will not be cached.", e);
+        }
+      }
+    } catch (RepositoryException e) {
+      LOG.warn("Cannot observe metadata of documents. Metadata will not be cached.", e);
+    }
+
+    this.reaperExecutor = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread t = new Thread(r, "onlyoffice-editor-reaper");
+      t.setDaemon(true);
+      return t;
+    });
+
+    // replay savings interrupted by a stop of this or another server periodically: a pending saving of
+    // another server can be still in progress, it will be replayed if not updated during the interval
+    Runnable replay = inContainer(this::replaySaves);
+    reaperExecutor.scheduleWithFixedDelay(() -> {
+      try {
+        replay.run();
+      } catch (Throwable e) {
+        LOG.error("Error checking for interrupted savings", e);
+      }
+    }, SAVE_REPLAY_DELAY, SAVE_REPLAY_INTERVAL, TimeUnit.MILLISECONDS);
+
+    // resolve Document Server hosts again periodically, their addresses can change (e.g. DNS failover)
+    if (documentserverAccessOnly && documentserverAddressesTTL > 0) {
+      reaperExecutor.scheduleWithFixedDelay(() -> {
+        try {
+          resolveDocumentServer();
+        } catch (Throwable e) {
+          LOG.error("Error resolving Document Server addresses", e);
+        }
+      }, documentserverAddressesTTL, documentserverAddressesTTL, TimeUnit.MILLISECONDS);
+    }
+
+    // check for abandoned editors periodically
+    if (reaperInterval > 0) {
+      // the reaper fires listeners and unlocks documents: it runs in the container, each check in its own
+      // request lifecycle, and an error will not cancel next checks
+      Runnable reaper = inContainer(this::reapEditors);
+      reaperExecutor.scheduleWithFixedDelay(() -> {
+        try {
+          reaper.run();
+        } catch (Throwable e) {
+          LOG.error("Error checking for abandoned editors", e);
+        }
+      }, reaperInterval, reaperInterval, TimeUnit.MILLISECONDS);
+    }
     LOG.info("Onlyoffice Editor service successfuly started");
   }
 
@@ -723,18 +2056,70 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    */
   @Override
   public void stop() {
-    LOG.info("Onlyoffice  Editor service successfuly stopped");
-  }
-
-  // *********************** implementation level ***************
-
-  /**
-   * Node title.
-   *
-   * @param node the node
-   * @return the string
-   * @throws RepositoryException the repository exception
-   */
+    if (reaperExecutor != null) {
+      reaperExecutor.shutdownNow();
+    }
+    if (syncExecutor != null) {
+      // already scheduled users sync will run
+      syncExecutor.shutdown();
+    }
+    for (MetadataListener l : metadataListeners.values()) {
+      l.unregister();
+    }
+    metadataListeners.clear();
+    // savings waiting for unlock stay pending, they will be replayed after the start
+    lockExecutor.shutdownNow();
+    for (UnlockListener l : unlockListeners.values()) {
+      l.unregister();
+    }
+    unlockListeners.clear();
+    for (ConcurrentLinkedQueue<DocumentSave> queue : lockWaiters.values()) {
+      for (DocumentSave save : queue) {
+        if (save.parked.compareAndSet(true, false)) {
+          LOG.warn("Saving of " + nodePath(save.workspace, save.path) + " (" + save.getKey()
+              + ") postponed until the next start: document locked");
+          save.spooled.close();
+        }
+      }
+    }
+    lockWaiters.clear();
+    // let already submitted documents to be saved
+    saveExecutor.shutdown();
+    try {
+      if (!saveExecutor.awaitTermination(SAVE_STOP_TIMEOUT, TimeUnit.SECONDS)) {
+        LOG.warn("Not all edited documents were saved on the service stop, they will be replayed after the start. Documents in saving: "
+            + saves.keySet());
+      }
+    } catch (InterruptedException e) {
+      LOG.warn("Interrupted while waiting for saving of edited documents. Documents in saving: " + saves.keySet());
+      Thread.currentThread().interrupt();
+    }
+    // let asynchronous listeners get already fired events
+    for (OnlyofficeEditorListener l : listeners) {
+      if (l instanceof AsyncEditorListener) {
+        AsyncEditorListener async = (AsyncEditorListener) l;
+        if (!async.shutdown(LISTENERS_STOP_TIMEOUT)) {
+          LOG.warn("Not all events delivered to listener on the service stop: " + async.getListener() + ". Events in queue: "
+              + async.getQueued());
+        }
+        if (async.getDropped() > 0 || async.getFailed() > 0) {
+          LOG.info("Listener " + async.getListener() + " events delivered: " + async.getDelivered() + ", delayed: "
+              + async.getDelayed() + ", dropped: " + async.getDropped() + ", failed: " + async.getFailed());
+        }
+      }
+    }
+    LOG.info("Onlyoffice  Editor service successfuly stopped");
+  }
+
+  // *********************** implementation level ***************
+
+  /**
+   * Node title.
+   *
+   * @param node the node
+   * @return the string
+   * @throws RepositoryException the repository exception
+   */
   protected String nodeTitle(Node node) throws RepositoryException {
     String title = null;
     if (node.hasProperty("exo:title")) {
@@ -767,7 +2152,16 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    * @throws RepositoryException the repository exception
    */
   protected String fileType(Node node) throws RepositoryException {
-    String title = nodeTitle(node);
+    return fileType(nodeTitle(node));
+  }
+
+  /**
+   * File type by a document title.
+   *
+   * @param title the title
+   * @return the string
+   */
+  protected String fileType(String title) {
     int dotIndex = title.lastIndexOf('.');
     if (dotIndex >= 0 && dotIndex < title.length()) {
       String fileExt = title.substring(dotIndex + 1).trim();
@@ -839,7 +2233,83 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
   }
 
   /**
-   * Generate id.
+   * Metadata of a document. It will be read from the node once and then cached until its properties will be
+   * changed or it will be moved. Metadata of referenceable nodes is cached by UUID, of others by path. Metadata
+   * of nodes in not observed workspaces isn't cached.
+   *
+   * @param workspace the workspace
+   * @param node the node
+   * @return the document metadata
+   * @throws RepositoryException the repository exception
+   */
+  @SuppressWarnings("deprecation")
+  protected DocumentMetadata metadata(String workspace, Node node) throws RepositoryException {
+    String uuid = node.isNodeType("mix:referenceable") ? node.getUUID() : null;
+    String path = node.getPath();
+    String key = metadataListeners.containsKey(workspace) ? metadataKey(workspace, uuid != null ? uuid : path) : null;
+    DocumentMetadata metadata = key != null ? metadataCache.get(key) : null;
+    if (metadata == null || !path.equals(metadata.path)) {
+      String title = nodeTitle(node);
+      metadata = new DocumentMetadata(uuid, path, title, fileType(title), nodeCreated(node));
+      if (key != null) {
+        metadataCache.put(key, metadata);
+      }
+    }
+    return metadata;
+  }
+
+  /**
+   * Metadata cache key of a node.
+   *
+   * @param workspace the workspace
+   * @param id the node UUID or path
+   * @return the key
+   */
+  protected String metadataKey(String workspace, String id) {
+    return new StringBuilder(workspace).append(':').append(id).toString();
+  }
+
+  /**
+   * Document key for a new editing session of given node. In content mode the key is the same until the
+   * document will be modified, thus the Document Server can reuse already downloaded and converted document
+   * from its cache. In random mode each session gets a new key.
+   *
+   * @param node the node
+   * @param workspace the workspace
+   * @param path the path
+   * @return the key
+   * @throws RepositoryException the repository exception
+   */
+  protected String documentKey(Node node, String workspace, String path) throws RepositoryException {
+    return contentKeys ? contentId(node, workspace, path).toString() : generateId(workspace, path).toString();
+  }
+
+  /**
+   * Generate id of a document content version: by the node identity (UUID if the node referenceable, path
+   * otherwise), modification date and size of its content.
+   *
+   * @param node the node
+   * @param workspace the workspace
+   * @param path the path
+   * @return the uuid
+   * @throws RepositoryException the repository exception
+   */
+  @SuppressWarnings("deprecation")
+  protected UUID contentId(Node node, String workspace, String path) throws RepositoryException {
+    Node content = nodeContent(node);
+    StringBuilder s = new StringBuilder();
+    s.append(workspace);
+    s.append(node.isNodeType("mix:referenceable") ? node.getUUID() : path);
+    if (content.hasProperty("jcr:lastModified")) {
+      s.append(content.getProperty("jcr:lastModified").getDate().getTimeInMillis());
+    }
+    s.append(data(content).getLength());
+
+    return UUID.nameUUIDFromBytes(s.toString().getBytes());
+  }
+
+  /**
+   * Generate random id.
    *
    * @param workspace the workspace
    * @param path the path
@@ -855,6 +2325,264 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
     return UUID.nameUUIDFromBytes(s.toString().getBytes());
   }
 
+  /**
+   * Editor cache key of a document user.
+   *
+   * @param key the document key
+   * @param userId the user id
+   * @return the string
+   */
+  protected String editorKey(String key, String userId) {
+    return new StringBuilder(key).append('/').append(userId).toString();
+  }
+
+  /**
+   * Editor cache key of given config.
+   *
+   * @param config the config
+   * @return the string
+   */
+  protected String editorKey(Config config) {
+    return editorKey(config.getDocument().getKey(), config.getEditorConfig().getUser().getId());
+  }
+
+  /**
+   * Active editors of a document. Returned map is a snapshot of cached editors, after changing an editor
+   * config it should be updated in the cache by {@link #updateEditor(Config)}.
+   *
+   * @param key the document key
+   * @return the editors configs mapped by user ID, or <code>null</code> if document not editing
+   */
+  protected ConcurrentHashMap<String, Config> activeEditors(String key) {
+    HashSet<String> users = usersCache.get(key);
+    if (users != null) {
+      ConcurrentHashMap<String, Config> configs = new ConcurrentHashMap<String, Config>();
+      for (String userId : users) {
+        Config config = activeCache.get(editorKey(key, userId));
+        if (config != null) {
+          configs.put(userId, config);
+        }
+      }
+      if (configs.size() > 0) {
+        return configs;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Active editors of a document found by its node path.
+   *
+   * @param nodePath the node path
+   * @return the editors configs mapped by user ID, or <code>null</code> if document not editing
+   */
+  protected ConcurrentHashMap<String, Config> activeEditorsByPath(String nodePath) {
+    String key = pathCache.get(nodePath);
+    if (key != null) {
+      return activeEditors(key);
+    }
+    return null;
+  }
+
+  /**
+   * Add an editor of a document. The editor will be cached by document key and user ID, the user added to the
+   * document users and, for a first user, the key indexed by node path.
+   *
+   * @param nodePath the node path
+   * @param config the editor config
+   * @return existing editor config of the user, or <code>null</code> if the editor was added
+   */
+  protected Config addEditor(String nodePath, Config config) {
+    String key = config.getDocument().getKey();
+    activities.put(key, System.currentTimeMillis());
+    String userId = config.getEditorConfig().getUser().getId();
+    String editorKey = editorKey(key, userId);
+    // the same lock as used for creating editors of the node
+    ReentrantLock activeLock = activeLock(nodePath);
+    activeLock.lock();
+    try {
+      Config existing = activeCache.get(editorKey);
+      if (existing != null) {
+        return existing;
+      }
+      // editor first, thus the users and index will point to existing entry
+      activeCache.put(editorKey, config);
+      HashSet<String> users = usersCache.get(key);
+      HashSet<String> newUsers = users != null ? new HashSet<String>(users) : new HashSet<String>();
+      newUsers.add(userId);
+      usersCache.put(key, newUsers);
+      if (users == null) {
+        pathCache.put(nodePath, key);
+      }
+      return null;
+    } finally {
+      activeLock.unlock();
+    }
+  }
+
+  /**
+   * Update an editor in the cache (required for replicated cache), only this editor will be replicated.
+   *
+   * @param config the editor config
+   */
+  protected void updateEditor(Config config) {
+    activeCache.put(editorKey(config), config);
+  }
+
+  /**
+   * Remove active editors of a document. The path index will be removed only if it still points to given
+   * key (a new editor may be already created for the node).
+   *
+   * @param key the document key
+   * @param nodePath the node path
+   */
+  protected void removeEditors(String key, String nodePath) {
+    // the same lock as used for creating editors of the node
+    ReentrantLock activeLock = activeLock(nodePath);
+    activeLock.lock();
+    try {
+      HashSet<String> users = usersCache.remove(key);
+      if (users != null) {
+        for (String userId : users) {
+          activeCache.remove(editorKey(key, userId));
+        }
+      }
+      if (key.equals(pathCache.get(nodePath))) {
+        pathCache.remove(nodePath);
+      }
+      activities.remove(key);
+    } finally {
+      activeLock.unlock();
+    }
+  }
+
+  /**
+   * Release editors of documents without activity during the idle time, if the Document Server confirms it
+   * doesn't edit them (e.g. it crashed or lost the network and will not send their last status). A document
+   * still edited in the Document Server will be checked again after the idle time.
+   */
+  protected void reapEditors() {
+    long now = System.currentTimeMillis();
+    // documents of the cache, including ones created in other cluster nodes: it's a first time we see them
+    for (String key : editingDocuments()) {
+      activities.putIfAbsent(key, now);
+    }
+    long idleSince = now - reaperIdleTime;
+    for (Iterator<Map.Entry<String, Long>> aiter = activities.entrySet().iterator(); aiter.hasNext();) {
+      Map.Entry<String, Long> ae = aiter.next();
+      String key = ae.getKey();
+      if (usersCache.get(key) == null) {
+        // already removed (in another node or expired)
+        aiter.remove();
+      } else if (ae.getValue() < idleSince && !saves.containsKey(key)) {
+        Boolean editing = isDocumentServerEditing(key);
+        if (editing == null) {
+          // cannot confirm: check it next time
+          continue;
+        } else if (editing) {
+          activities.put(key, now);
+        } else {
+          releaseEditors(key);
+        }
+      }
+    }
+  }
+
+  /**
+   * Keys of Editing documents in the cache.
+   *
+   * @return the keys
+   */
+  protected List<String> editingDocuments() {
+    final List<String> keys = new LinkedList<String>();
+    try {
+      usersCache.select(new CachedObjectSelector<String, HashSet<String>>() {
+        @Override
+        public boolean select(String key, ObjectCacheInfo<? extends HashSet<String>> ocinfo) {
+          return true;
+        }
+
+        @Override
+        public void onSelect(ExoCache<? extends String, ? extends HashSet<String>> cache,
+                             String key,
+                             ObjectCacheInfo<? extends HashSet<String>> ocinfo) throws Exception {
+          keys.add(key);
+        }
+      });
+    } catch (Exception e) {
+      LOG.warn("Error reading Editing documents from the cache", e);
+    }
+    return keys;
+  }
+
+  /**
+   * Ask the Document Server command service does it edit a document.
+   *
+   * @param key the document key
+   * @return <code>true</code> if the document edited, <code>false</code> if Document Server doesn't know
+   *         such document, <code>null</code> if cannot say (request failed or unexpected response)
+   */
+  @SuppressWarnings("unchecked")
+  protected Boolean isDocumentServerEditing(String key) {
+    JSONObject command = new JSONObject();
+    command.put("c", "info");
+    command.put("key", key);
+    try {
+      return documentServer.post(commandServiceUrl, "application/json", command.toJSONString(), (data, length) -> {
+        try {
+          JSONObject resp = (JSONObject) new JSONParser().parse(new InputStreamReader(data, StandardCharsets.UTF_8));
+          Object error = resp.get("error");
+          if (error instanceof Number) {
+            long code = ((Number) error).longValue();
+            if (code == 0) {
+              return Boolean.TRUE;
+            } else if (code == COMMAND_NO_DOCUMENT) {
+              return Boolean.FALSE;
+            }
+          }
+          LOG.warn("Unexpected response of Document Server command service for " + key + ": " + resp);
+          return null;
+        } catch (ParseException | ClassCastException e) {
+          throw new OnlyofficeEditorException("Error parsing response of Document Server command service", e);
+        }
+      });
+    } catch (OnlyofficeEditorException e) {
+      LOG.warn("Cannot check document " + key + " in Document Server: " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Release editors of abandoned document: open editors will be closed ({@link OnlyofficeEditorListener#onLeaved}),
+   * users waiting for the document saving will get an error ({@link OnlyofficeEditorListener#onError}).
+   *
+   * @param key the document key
+   */
+  protected void releaseEditors(String key) {
+    ConcurrentHashMap<String, Config> configs = activeEditors(key);
+    if (configs != null) {
+      String nodePath = nodePath(configs.values().iterator().next());
+      LOG.warn("Releasing abandoned editors of document " + nodePath + ". Key: " + key + ". Users: " + configs.keySet());
+      List<Config> closing = new LinkedList<Config>();
+      for (Config config : configs.values()) {
+        if (config.isClosing()) {
+          config.closed();
+          config.setError("Editor session expired. Document not saved");
+          closing.add(config);
+        } else if (config.isOpen()) {
+          config.closed();
+          fireLeaved(config);
+        }
+      }
+      removeEditors(key, nodePath);
+      for (Config config : closing) {
+        fireError(config);
+      }
+    } else {
+      activities.remove(key);
+    }
+  }
+
   /**
    * Node path.
    *
@@ -867,206 +2595,566 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
   }
 
   /**
-   * Node path.
-   *
-   * @param config the config
-   * @return the string
+   * Node path.
+   *
+   * @param config the config
+   * @return the string
+   */
+  protected String nodePath(Config config) {
+    return nodePath(config.getWorkspace(), config.getPath());
+  }
+
+  /**
+   * Gets the user.
+   *
+   * @param username the username
+   * @return the user
+   * @throws OnlyofficeEditorException the onlyoffice editor exception
+   */
+  protected User getUser(String username) throws OnlyofficeEditorException {
+    User user = userCache.get(username);
+    if (user == null) {
+      try {
+        user = organization.getUserHandler().findUserByName(username);
+      } catch (Exception e) {
+        throw new OnlyofficeEditorException("Error searching user " + username, e);
+      }
+      if (user != null) {
+        userCache.put(username, user);
+      }
+    }
+    return user;
+  }
+
+  /**
+   * Remove cached data of given user.
+   *
+   * @param username the username
+   */
+  protected void invalidateUser(String username) {
+    userCache.remove(username);
+    langCache.remove(username);
+    identityCache.remove(username);
+  }
+
+  /**
+   * Webdav url.
+   *
+   * @param schema the schema
+   * @param host the host
+   * @param workspace the workspace
+   * @param path the path
+   * @return the string
+   * @throws OnlyofficeEditorException the onlyoffice editor exception
+   * @throws RepositoryException the repository exception
+   */
+  protected String webdavUrl(String schema, String host, String workspace, String path) throws OnlyofficeEditorException,
+                                                                                        RepositoryException {
+    StringBuilder filePath = new StringBuilder();
+    try {
+      URI baseWebdavUri = webdavUri(schema, host);
+
+      filePath.append(baseWebdavUri.getPath());
+      filePath.append('/');
+      filePath.append(jcrService.getCurrentRepository().getConfiguration().getName());
+      filePath.append('/');
+      filePath.append(workspace);
+      filePath.append(path);
+
+      URI uri = new URI(baseWebdavUri.getScheme(),
+                        null,
+                        baseWebdavUri.getHost(),
+                        baseWebdavUri.getPort(),
+                        filePath.toString(),
+                        null,
+                        null);
+      return uri.toASCIIString();
+    } catch (URISyntaxException e) {
+      throw new OnlyofficeEditorException("Error creating content link (WebDAV) for " + path + " in " + workspace, e);
+    }
+  }
+
+  /**
+   * Lock for updating Editing documents cache of given document. The same lock will be returned for the same
+   * node path.
+   *
+   * @param nodePath the node path
+   * @return the reentrant lock
+   */
+  protected ReentrantLock activeLock(String nodePath) {
+    int hash = nodePath.hashCode();
+    hash ^= (hash >>> 16); // spread higher bits as the stripes use only lower ones
+    return activeLocks[hash & (activeLocks.length - 1)];
+  }
+
+  /**
+   * Sync users. Changed editors will be updated in the cache.
+   *
+   * @param configs the configs
+   * @param users the users
+   * @return true, if actually changed editor config user(s)
+   */
+  protected boolean syncUsers(ConcurrentHashMap<String, Config> configs, String[] users) {
+    Set<String> editors = new HashSet<String>(Arrays.asList(users));
+    // remove gone editors
+    boolean updated = false;
+    for (Iterator<Map.Entry<String, Config>> ceiter = configs.entrySet().iterator(); ceiter.hasNext();) {
+      Map.Entry<String, Config> ce = ceiter.next();
+      String user = ce.getKey();
+      Config config = ce.getValue();
+      if (editors.contains(user)) {
+        if (config.isCreated() || config.isClosed()) {
+          // editor was (re)opened by user
+          config.open();
+          updateEditor(config);
+          fireJoined(config);
+          updated = true;
+        }
+      } else {
+        // editor was closed by user: it will be closing if closed via WebUI of ECMS explorer, open in general
+        // case
+        if (config.isClosing() || config.isOpen()) {
+          // closed because user sync happens when someone else still editing or nothing edited
+          config.closed();
+          updateEditor(config);
+          fireLeaved(config);
+          updated = true;
+        }
+      }
+    }
+    return updated;
+  }
+
+  /**
+   * ID of a status saving the document: status 2 or status 3 with the document URL. Retries of the status
+   * have the same ID. The whole URL is a part of the ID, thus different savings cannot collide.
+   *
+   * @param status the status
+   * @return the ID or <code>null</code> if status doesn't save the document
+   */
+  protected String savingId(DocumentStatus status) {
+    long statusCode = status.getStatus();
+    String url = status.getUrl();
+    if (statusCode == 2 || (statusCode == 3 && url != null && url.length() > 0)) {
+      StringBuilder id = new StringBuilder(status.getKey());
+      id.append(':');
+      id.append(statusCode);
+      id.append(':');
+      id.append(url != null ? url : "");
+      return id.toString();
+    }
+    return null;
+  }
+
+  /**
+   * Sync users of given "being edited" status after the batch window. If other statuses of the document will
+   * come within the window, only the latest one will be synced.
+   *
+   * @param key the document key
+   * @param status the status
+   */
+  protected void syncUsersLater(String key, DocumentStatus status) {
+    if (pendingSyncs.put(key, status) == null) {
+      // first status in the window: schedule the sync, next ones will just replace the status
+      try {
+        syncExecutor.schedule(inContainer(() -> syncPending(key)), statusBatchWindow, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        // service stopped
+        syncPending(key);
+      }
+    }
+  }
+
+  /**
+   * Sync users of latest "being edited" status of a document, if it's still waiting for the sync.
+   *
+   * @param key the document key
+   */
+  protected void syncPending(String key) {
+    DocumentStatus status = pendingSyncs.remove(key);
+    if (status != null) {
+      ConcurrentHashMap<String, Config> configs = activeEditors(key);
+      if (configs != null) {
+        try {
+          syncUsers(configs, status.getUsers());
+        } catch (Throwable e) {
+          LOG.warn("Error syncing users of document " + key + ": " + Arrays.toString(status.getUsers()), e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the current users.
+   *
+   * @param configs the configs
+   * @return the current users
+   */
+  protected String[] getActiveUsers(ConcurrentHashMap<String, Config> configs) {
+    // copy key set to avoid confuses w/ concurrency
+    Set<String> userIds = new LinkedHashSet<String>(configs.keySet());
+    // remove not existing locally (just removed), not yet open (created) or already closed
+    for (Iterator<String> uiter = userIds.iterator(); uiter.hasNext();) {
+      String userId = uiter.next();
+      Config config = configs.get(userId);
+      if (config == null || config.isCreated() || config.isClosed()) {
+        uiter.remove();
+      }
+    }
+    return userIds.toArray(new String[userIds.size()]);
+  }
+
+  /**
+   * Save edited document in background. If a saving of the same document is already in progress, this one
+   * will run after it.
+   *
+   * @param save the save
+   * @return the future of saving result
+   */
+  protected CompletableFuture<Void> saveAsync(DocumentSave save) {
+    final DocumentSave[] previous = new DocumentSave[1];
+    saves.compute(save.getKey(), (key, last) -> {
+      if (last != null) {
+        last.next = save;
+        previous[0] = last;
+      }
+      return save;
+    });
+    if (previous[0] == null) {
+      execute(save);
+    } // otherwise it will be executed when the previous one will be done
+    return save.result;
+  }
+
+  /**
+   * Finish given saving and execute a next one for the same document, if it was submitted.
+   *
+   * @param save the save
+   */
+  protected void saved(DocumentSave save) {
+    final DocumentSave[] next = new DocumentSave[1];
+    saves.compute(save.getKey(), (key, last) -> {
+      next[0] = save.next;
+      return last == save ? null : last;
+    });
+    if (next[0] != null) {
+      execute(next[0]);
+    }
+  }
+
+  /**
+   * Execute given saving in the save executor. If the executor cannot accept it (its queue is full or it's
+   * shutdown), the saving will run in the current thread.
+   *
+   * @param save the save
+   */
+  protected void execute(DocumentSave save) {
+    try {
+      saveExecutor.execute(inContainer(save));
+    } catch (RejectedExecutionException e) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Saving of " + nodePath(save.workspace, save.path) + " will run in current thread: " + e.getMessage());
+      }
+      save.run();
+    }
+  }
+
+  /**
+   * Persist a pending saving of a document in the system workspace. It will be removed when the document
+   * saved. A saving interrupted by a stop of the server or failed will stay pending and replayed later (see
+   * {@link #replaySaves()}).
+   *
+   * @param workspace the document workspace
+   * @param path the document path
+   * @param status the status
+   * @return the path of the pending saving node
+   * @throws OnlyofficeEditorException if the saving cannot be persisted (the Document Server status should
+   *           not be acknowledged)
+   */
+  protected String persistSave(String workspace, String path, DocumentStatus status) throws OnlyofficeEditorException {
+    Session session = null;
+    try {
+      session = jcrService.getCurrentRepository().getSystemSession(systemWorkspace());
+      Node marker = savesNode(session).addNode(UUID.randomUUID().toString(), "nt:unstructured");
+      marker.setProperty("key", status.getKey());
+      marker.setProperty("status", status.getStatus());
+      marker.setProperty("url", status.getUrl());
+      marker.setProperty("users", status.getUsers());
+      marker.setProperty("workspace", workspace);
+      marker.setProperty("path", path);
+      marker.setProperty("owner", instanceId);
+      marker.setProperty("time", Calendar.getInstance());
+      marker.setProperty("attempts", 0);
+      session.save();
+      return marker.getPath();
+    } catch (RepositoryException e) {
+      throw new OnlyofficeEditorException("Error persisting saving of document " + nodePath(workspace, path), e);
+    } finally {
+      if (session != null) {
+        session.logout();
+      }
+    }
+  }
+
+  /**
+   * Remove a pending saving of a document when it's done.
+   *
+   * @param marker the path of the pending saving node, can be <code>null</code>
+   */
+  protected void removeSave(String marker) {
+    if (marker != null) {
+      Session session = null;
+      try {
+        session = jcrService.getCurrentRepository().getSystemSession(systemWorkspace());
+        if (session.itemExists(marker)) {
+          session.getItem(marker).remove();
+          session.save();
+        }
+      } catch (RepositoryException e) {
+        LOG.warn("Error removing pending saving " + marker, e);
+      } finally {
+        if (session != null) {
+          session.logout();
+        }
+      }
+    }
+  }
+
+  /**
+   * Replay pending savings interrupted by a stop of this or another server. Savings of this service instance
+   * and ones updated by other servers during the replay interval will be skipped. A replayed saving will be
+   * claimed by this server first, thus other servers will not replay it concurrently. After a few failed
+   * attempts a saving will be dropped.
    */
-  protected String nodePath(Config config) {
-    return nodePath(config.getWorkspace(), config.getPath());
+  protected void replaySaves() {
+    Session session = null;
+    try {
+      session = jcrService.getCurrentRepository().getSystemSession(systemWorkspace());
+      long staleTime = System.currentTimeMillis() - SAVE_REPLAY_INTERVAL;
+      for (NodeIterator markers = savesNode(session).getNodes(); markers.hasNext();) {
+        Node marker = markers.nextNode();
+        try {
+          if (instanceId.equals(marker.getProperty("owner").getString())
+              || marker.getProperty("time").getDate().getTimeInMillis() > staleTime) {
+            continue;
+          }
+          DocumentStatus status = new DocumentStatus();
+          status.setKey(marker.getProperty("key").getString());
+          status.setStatus(marker.getProperty("status").getLong());
+          status.setUrl(marker.getProperty("url").getString());
+          Value[] users = marker.getProperty("users").getValues();
+          String[] userIds = new String[users.length];
+          for (int i = 0; i < users.length; i++) {
+            userIds[i] = users[i].getString();
+          }
+          status.setUsers(userIds);
+          String workspace = marker.getProperty("workspace").getString();
+          String path = marker.getProperty("path").getString();
+          long attempts = marker.getProperty("attempts").getLong() + 1;
+          if (attempts > SAVE_REPLAY_ATTEMPTS) {
+            LOG.error("Interrupted saving of document " + nodePath(workspace, path) + " (" + status.getKey()
+                + ") dropped after " + SAVE_REPLAY_ATTEMPTS + " attempts. Edited content: " + status.getUrl());
+            marker.remove();
+            session.save();
+            continue;
+          }
+          // claim the saving: a concurrent claim by another server will fail
+          marker.setProperty("owner", instanceId);
+          marker.setProperty("time", Calendar.getInstance());
+          marker.setProperty("attempts", attempts);
+          session.save();
+
+          LOG.info("Replaying interrupted saving of document " + nodePath(workspace, path) + " (" + status.getKey() + ")");
+          ConcurrentHashMap<String, Config> configs = activeEditors(status.getKey());
+          Config config = configs != null && userIds.length > 0 ? configs.get(userIds[0]) : null;
+          saveAsync(new DocumentSave(config, workspace, path, status, marker.getPath()));
+        } catch (InvalidItemStateException e) {
+          // claimed or removed by another server
+          session.refresh(false);
+        } catch (RepositoryException e) {
+          LOG.warn("Error replaying pending saving " + marker.getPath(), e);
+          session.refresh(false);
+        }
+      }
+    } catch (RepositoryException e) {
+      LOG.warn("Error reading pending savings", e);
+    } finally {
+      if (session != null) {
+        session.logout();
+      }
+    }
   }
 
   /**
-   * Gets the user.
+   * Get (and create if not yet exists) the node of pending savings.
    *
-   * @param username the username
-   * @return the user
-   * @throws OnlyofficeEditorException the onlyoffice editor exception
+   * @param session the system session
+   * @return the node
+   * @throws RepositoryException the repository exception
    */
-  protected User getUser(String username) throws OnlyofficeEditorException {
-    try {
-      return organization.getUserHandler().findUserByName(username);
-    } catch (Exception e) {
-      throw new OnlyofficeEditorException("Error searching user " + username, e);
+  protected Node savesNode(Session session) throws RepositoryException {
+    Node node = session.getRootNode();
+    for (String name : SAVES_PATH.split("/")) {
+      node = node.hasNode(name) ? node.getNode(name) : node.addNode(name, "nt:unstructured");
+    }
+    if (session.hasPendingChanges()) {
+      session.save();
     }
+    return node;
   }
 
   /**
-   * Webdav url.
+   * Name of the system workspace of the current repository.
    *
-   * @param schema the schema
-   * @param host the host
-   * @param workspace the workspace
-   * @param path the path
-   * @return the string
-   * @throws OnlyofficeEditorException the onlyoffice editor exception
+   * @return the workspace name
    * @throws RepositoryException the repository exception
    */
-  protected String webdavUrl(String schema, String host, String workspace, String path) throws OnlyofficeEditorException,
-                                                                                        RepositoryException {
-    StringBuilder filePath = new StringBuilder();
-    try {
-      URI baseWebdavUri = webdavUri(schema, host);
-
-      filePath.append(baseWebdavUri.getPath());
-      filePath.append('/');
-      filePath.append(jcrService.getCurrentRepository().getConfiguration().getName());
-      filePath.append('/');
-      filePath.append(workspace);
-      filePath.append(path);
-
-      URI uri = new URI(baseWebdavUri.getScheme(),
-                        null,
-                        baseWebdavUri.getHost(),
-                        baseWebdavUri.getPort(),
-                        filePath.toString(),
-                        null,
-                        null);
-      return uri.toASCIIString();
-    } catch (URISyntaxException e) {
-      throw new OnlyofficeEditorException("Error creating content link (WebDAV) for " + path + " in " + workspace, e);
-    }
+  protected String systemWorkspace() throws RepositoryException {
+    return jcrService.getCurrentRepository().getConfiguration().getSystemWorkspaceName();
   }
 
   /**
-   * Sync users.
+   * Wrap given task to run in the container of this service. A background thread has no container and
+   * request resources (e.g. JCR sessions) by default, the task will run in its own request lifecycle.
    *
-   * @param configs the configs
-   * @param users the users
-   * @return true, if actually changed editor config user(s)
+   * @param task the task
+   * @return the task running in the container
    */
-  protected boolean syncUsers(ConcurrentHashMap<String, Config> configs, String[] users) {
-    Set<String> editors = new HashSet<String>(Arrays.asList(users));
-    // remove gone editors
-    boolean updated = false;
-    for (Iterator<Map.Entry<String, Config>> ceiter = configs.entrySet().iterator(); ceiter.hasNext();) {
-      Map.Entry<String, Config> ce = ceiter.next();
-      String user = ce.getKey();
-      Config config = ce.getValue();
-      if (editors.contains(user)) {
-        if (config.isCreated() || config.isClosed()) {
-          // editor was (re)opened by user
-          config.open();
-          fireJoined(config);
-          updated = true;
-        }
-      } else {
-        // editor was closed by user: it will be closing if closed via WebUI of ECMS explorer, open in general
-        // case
-        if (config.isClosing() || config.isOpen()) {
-          // closed because user sync happens when someone else still editing or nothing edited
-          config.closed();
-          fireLeaved(config);
-          updated = true;
-        }
-      }
+  protected Runnable inContainer(Runnable task) {
+    if (container == null) {
+      return task;
     }
-    return updated;
+    return () -> {
+      ExoContainer previous = ExoContainerContext.getCurrentContainerIfPresent();
+      ExoContainerContext.setCurrentContainer(container);
+      RequestLifeCycle.begin(container);
+      try {
+        task.run();
+      } finally {
+        RequestLifeCycle.end();
+        ExoContainerContext.setCurrentContainer(previous);
+      }
+    };
   }
 
   /**
-   * Gets the current users.
+   * Save edited document in the storage and remove it from active editors. The document will be downloaded
+   * once, then if its node is locked by another user, the saving will wait for the unlock without holding a
+   * thread and will run again when unlocked (see {@link #awaitUnlock(DocumentSave, String, String)}).
    *
-   * @param configs the configs
-   * @return the current users
+   * @param save the saving
+   * @return <code>true</code> if the document saved, <code>false</code> if the saving waits for unlocking of
+   *         the document
+   * @throws OnlyofficeEditorException the onlyoffice editor exception
+   * @throws RepositoryException the repository exception
    */
-  protected String[] getActiveUsers(ConcurrentHashMap<String, Config> configs) {
-    // copy key set to avoid confuses w/ concurrency
-    Set<String> userIds = new LinkedHashSet<String>(configs.keySet());
-    // remove not existing locally (just removed), not yet open (created) or already closed
-    for (Iterator<String> uiter = userIds.iterator(); uiter.hasNext();) {
-      String userId = uiter.next();
-      Config config = configs.get(userId);
-      if (config == null || config.isCreated() || config.isClosed()) {
-        uiter.remove();
+  protected boolean save(DocumentSave save) throws OnlyofficeEditorException, RepositoryException {
+    if (save.spooled == null) {
+      download(save);
+    }
+    if (store(save)) {
+      if (save.config != null) {
+        removeEditors(save.getKey(), nodePath(save.workspace, save.path));
       }
+      return true;
     }
-    return userIds.toArray(new String[userIds.size()]);
+    return false;
   }
 
   /**
-   * Download.
+   * Download edited document from Document Server to a local spool of the saving. The content will be fully
+   * downloaded and verified before locking the document node, thus the lock will be held only for local
+   * writing.
    *
-   * @param config the config
-   * @param status the status
+   * @param save the saving
    * @throws OnlyofficeEditorException the onlyoffice editor exception
    * @throws RepositoryException the repository exception
    */
-  @SuppressWarnings("deprecation")
-  protected void download(Config config, DocumentStatus status) throws OnlyofficeEditorException, RepositoryException {
-
-    // First mark closing, then do actual download and save in storage. Note: closing state may be already set
-    // by UI layer (OnlyofficeEditorUIService).
-    config.closing();
-
-    String workspace = config.getWorkspace();
-    String path = config.getPath();
-    String nodePath = nodePath(workspace, path);
+  protected void download(DocumentSave save) throws OnlyofficeEditorException, RepositoryException {
+    String nodePath = nodePath(save.workspace, save.path);
+    String userId = save.status.getUsers()[0]; // assuming a single user here (last editor)
 
     if (LOG.isDebugEnabled()) {
-      LOG.debug(">> download(" + nodePath + ", " + config.getDocument().getKey() + ")");
+      LOG.debug(">> download(" + nodePath + ", " + save.getKey() + ")");
     }
 
-    String userId = status.getUsers()[0]; // assuming a single user here (last editor)
-    validateUser(userId, config);
-
-    String contentUrl = status.getUrl();
-    Calendar editedTime = Calendar.getInstance();
-
-    HttpURLConnection connection;
-    InputStream data;
-    try {
-      URL url = new URL(contentUrl);
-      connection = (HttpURLConnection) url.openConnection();
-      data = connection.getInputStream();
-      if (data == null) {
-        throw new OnlyofficeEditorException("Content stream is null");
-      }
-    } catch (MalformedURLException e) {
-      throw new OnlyofficeEditorException("Error parsing content URL " + contentUrl + " for " + nodePath, e);
-    } catch (IOException e) {
-      throw new OnlyofficeEditorException("Error reading content stream " + contentUrl + " for " + nodePath, e);
+    if (save.config != null) {
+      // First mark closing, then do actual download and save in storage. Note: closing state may be already
+      // set by UI layer (OnlyofficeEditorUIService).
+      save.config.closing();
+      validateUser(userId, save.config);
+    } else if (getUser(userId) == null) {
+      throw new BadParameterException("User not found " + userId + " for " + nodePath);
     }
 
-    // remember real context state and session provider to restore them at the end
-    ConversationState contextState = ConversationState.getCurrent();
-    SessionProvider contextProvider = sessionProviders.getSessionProvider(null);
-    try {
-      // We want do all the job under actual (last editor) user here
-      // Notable that some WCM actions (FileUpdateActivityListener) will fail if user will be anonymous
-      // TODO but it seems looks as nasty thing for security, it should be carefully reviewed for production
-      Identity userIdentity = userIdentity(userId);
-      if (userIdentity != null) {
-        ConversationState state = new ConversationState(userIdentity);
-        // Keep subject as attribute in ConversationState.
-        state.setAttribute(ConversationState.SUBJECT, userIdentity.getSubject());
-        ConversationState.setCurrent(state);
-        SessionProvider userProvider = new SessionProvider(state);
-        sessionProviders.setSessionProvider(null, userProvider);
-        if (LOG.isDebugEnabled()) {
-          LOG.debug(">>> download under user " + userIdentity.getUserId() + " (" + nodePath + ", " + config.getDocument().getKey()
-              + ")");
-        }
-      } else {
-        LOG.warn("User identity not found " + userId + " for downloading " + config.getDocument().getKey() + " " + nodePath);
-        throw new OnlyofficeEditorException("User identity not found " + userId);
-      }
+    save.editedTime = Calendar.getInstance();
+    save.start = System.nanoTime();
+    save.spooled = spool(save.status.getUrl(), nodePath);
+    metrics.saveFetch.recordSince(save.start);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(">>> downloaded " + save.spooled.getLength() + " bytes ("
+          + (save.spooled.isInMemory() ? "memory" : "file") + ", SHA-256 " + save.spooled.getDigest() + ") for "
+          + nodePath + ", " + save.getKey());
+    }
+  }
 
+  /**
+   * Write downloaded content of the saving to the document node. If the node is locked by another user, the
+   * saving will be parked until the unlock, but not longer of predefined time.
+   *
+   * @param save the saving
+   * @return <code>true</code> if the content stored, <code>false</code> if the saving waits for unlocking of
+   *         the document
+   * @throws OnlyofficeEditorException the onlyoffice editor exception
+   * @throws RepositoryException the repository exception
+   */
+  @SuppressWarnings("deprecation")
+  protected boolean store(DocumentSave save) throws OnlyofficeEditorException, RepositoryException {
+    final String workspace = save.workspace;
+    final String path = save.path;
+    final String nodePath = nodePath(workspace, path);
+    final String userId = save.status.getUsers()[0];
+    final Config config = save.config;
+    final SpooledContent spooled = save.spooled;
+    final Calendar editedTime = save.editedTime;
+    final long start = save.start;
+
+    // We want do all the job under actual (last editor) user here
+    // Notable that some WCM actions (FileUpdateActivityListener) will fail if user will be anonymous
+    // TODO but it seems looks as nasty thing for security, it should be carefully reviewed for production
+    return runAs(userId, () -> {
       // work in user session
       Node node = node(workspace, path);
       Node content = nodeContent(node);
 
-      // lock node first, this also will check if node isn't locked by another user (will throw exception)
-      Lock lock = lock(node, config);
+      // lock node first, this also will check if node isn't locked by another user
+      if (save.lockStart == 0) {
+        save.lockStart = System.nanoTime();
+        metrics.lockAttempts.increment();
+      }
+      Lock lock = lock(node, userId, config);
       if (lock == null) {
+        if (save.lockDeadline == 0) {
+          save.lockDeadline = System.currentTimeMillis() + LOCK_WAIT_TIMEOUT * LOCK_WAIT_ATTEMTS;
+          metrics.lockWaits.increment();
+        }
+        if (System.currentTimeMillis() < save.lockDeadline) {
+          awaitUnlock(save, workspace, node.getPath());
+          return false;
+        }
+        metrics.lockFailures.increment();
         throw new OnlyofficeEditorException("Document locked " + nodePath);
       }
+      metrics.saveLock.recordSince(save.lockStart);
 
       // manage version only if node already mix:versionable
       boolean checkIn = checkout(node);
 
+      InputStream data = null;
       try {
-        // update document
+        // update document from the local spool
+        long writeStart = System.nanoTime();
+        data = spooled.getStream();
         content.setProperty("jcr:data", data);
         // update modified date (this will force PDFViewer to regenerate its images)
         content.setProperty("jcr:lastModified", editedTime);
@@ -1087,16 +3175,22 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
         }
 
         node.save();
+        metrics.saveWrite.recordSince(writeStart);
         if (checkIn) {
           // Make a new version from the downloaded state
+          long checkinStart = System.nanoTime();
           node.checkin();
           // Since 1.2.0-RC01 we check-out the document to let (more) other actions in ECMS appear on it
           node.checkout();
+          metrics.saveCheckin.recordSince(checkinStart);
         }
 
-        config.closed(); // reset transient closing state
+        metrics.saveTotal.recordSince(start);
 
-        fireSaved(config);
+        if (config != null) {
+          config.closed(); // reset transient closing state
+          fireSaved(config);
+        }
       } catch (RepositoryException e) {
         try {
           node.refresh(false); // rollback JCR modifications
@@ -1104,30 +3198,58 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
           LOG.warn("Error rolling back failed change for " + nodePath, re);
         }
         throw e; // let the caller handle it further
+      } catch (IOException e) {
+        throw new OnlyofficeEditorException("Error reading downloaded content for " + nodePath, e);
       } finally {
-        try {
-          data.close();
-        } catch (Throwable e) {
-          LOG.warn("Error closing exported content stream for " + nodePath, e);
-        }
-        try {
-          connection.disconnect();
-        } catch (Throwable e) {
-          LOG.warn("Error closing export connection for " + nodePath, e);
+        if (data != null) {
+          try {
+            data.close();
+          } catch (Throwable e) {
+            LOG.warn("Error closing downloaded content stream for " + nodePath, e);
+          }
         }
         try {
           if (lock != null && node.isLocked()) {
             node.unlock();
           }
         } catch (Throwable e) {
-          LOG.warn("Error unlocking edited document " + nodePath(workspace, path), e);
+          LOG.warn("Error unlocking edited document " + nodePath, e);
         }
       }
-    } finally {
-      // restore context env
-      ConversationState.setCurrent(contextState);
-      sessionProviders.setSessionProvider(null, contextProvider);
+      return true;
+    });
+  }
+
+  /**
+   * Download edited content from Document Server to a local spool. The content length will be checked against
+   * Content-Length of the response if it was provided, otherwise a warning about not verified content logged.
+   *
+   * @param contentUrl the content URL
+   * @param nodePath the node path
+   * @return the spooled content
+   * @throws OnlyofficeEditorException if content cannot be downloaded or it's incomplete
+   */
+  protected SpooledContent spool(String contentUrl, String nodePath) throws OnlyofficeEditorException {
+    SpooledContent spooled;
+    try {
+      spooled = documentServer.get(contentUrl, new DocumentServerClient.ResponseReader<SpooledContent>() {
+        @Override
+        public SpooledContent read(InputStream data, long length) throws IOException {
+          return SpooledContent.spool(data, length, downloadMemoryThreshold);
+        }
+      });
+    } catch (OnlyofficeEditorException e) {
+      throw new OnlyofficeEditorException("Error downloading content for " + nodePath + ". " + e.getMessage(), e);
+    }
+    if (!spooled.isVerified()) {
+      LOG.warn("Document Server didn't provide length of edited content for " + nodePath + ", downloaded "
+          + spooled.getLength() + " bytes not verified");
     }
+    if (spooled.getLength() == 0) {
+      spooled.close();
+      throw new OnlyofficeEditorException("Empty content downloaded " + contentUrl + " for " + nodePath);
+    }
+    return spooled;
   }
 
   /**
@@ -1191,16 +3313,16 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
   }
 
   /**
-   * Lock by current user of the node. If lock attempts will succeed in predefined time this method will throw
-   * {@link OnlyofficeEditorException}. If node isn't mix:versionable it will be added first and node saved.
+   * Lock by current user of the node. If node isn't mix:lockable it will be added first and node saved. This
+   * method doesn't wait for the lock: if the node locked by another user, it will return <code>null</code>.
    *
    * @param node {@link Node}
-   * @param config {@link Config}
-   * @return {@link Lock} acquired by current user.
-   * @throws OnlyofficeEditorException the onlyoffice editor exception
+   * @param userId the current user id
+   * @param config {@link Config} of the user, <code>null</code> if the user has no editor in this server
+   * @return {@link Lock} acquired by current user, <code>null</code> if the node locked by another user
    * @throws RepositoryException the repository exception
    */
-  protected Lock lock(Node node, Config config) throws OnlyofficeEditorException, RepositoryException {
+  protected Lock lock(Node node, String userId, Config config) throws RepositoryException {
     if (!node.isNodeType("mix:lockable")) {
       if (!node.isCheckedOut() && node.isNodeType("mix:versionable")) {
         node.checkout();
@@ -1209,33 +3331,90 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
       node.save();
     }
 
-    Config.Editor.User user = config.getEditorConfig().getUser();
-    Lock lock;
-    int attempts = 0;
+    Config.Editor.User user = config != null ? config.getEditorConfig().getUser() : null;
+    if (node.isLocked()) {
+      String lockToken = user != null ? user.getLockToken() : null;
+      if (node.getLock().getLockOwner().equals(userId) && lockToken != null) {
+        // already this user lock
+        node.getSession().addLockToken(lockToken);
+        return node.getLock();
+      }
+      return null;
+    }
     try {
-      do {
-        attempts++;
-        if (node.isLocked()) {
-          String lockToken = user.getLockToken();
-          if (node.getLock().getLockOwner().equals(user.getId()) && lockToken != null) {
-            // already this user lock
-            node.getSession().addLockToken(lockToken);
-            lock = node.getLock();
-          } else {
-            // need wait for unlock
-            Thread.sleep(LOCK_WAIT_TIMEOUT);
-            lock = null;
-          }
-        } else {
-          lock = node.lock(true, false); // TODO deep vs only file node lock?
-          user.setLockToken(lock.getLockToken()); // keep own token for crossing sessions
+      Lock lock = node.lock(true, false); // TODO deep vs only file node lock?
+      if (user != null) {
+        user.setLockToken(lock.getLockToken()); // keep own token for crossing sessions
+      }
+      return lock;
+    } catch (LockException e) {
+      // node was locked by someone else just after our check
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Document was locked concurrently " + nodePath(node.getSession().getWorkspace().getName(), node.getPath())
+            + ": " + e.getMessage());
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Park the saving until unlocking of its document node. The saving will be resumed by an unlock event
+   * observed in the workspace or by a recheck, that is a safety net for lock releases without events (e.g.
+   * expired locks or unlock happened before the parking).
+   *
+   * @param save the saving
+   * @param workspace the workspace
+   * @param path the node path
+   */
+  protected void awaitUnlock(DocumentSave save, String workspace, String path) {
+    UnlockListener listener = unlockListeners.computeIfAbsent(workspace, UnlockListener::new);
+    try {
+      listener.register();
+    } catch (RepositoryException e) {
+      LOG.warn("Error observing unlock in " + workspace + ", will recheck the lock of " + nodePath(workspace, path), e);
+    }
+    String nodePath = nodePath(workspace, path);
+    save.parked.set(true);
+    lockWaiters.computeIfAbsent(nodePath, p -> new ConcurrentLinkedQueue<DocumentSave>()).add(save);
+    long recheck = Math.max(0, Math.min(save.lockDeadline - System.currentTimeMillis(), LOCK_WAIT_RECHECK));
+    try {
+      lockExecutor.schedule(() -> resume(save, nodePath), recheck, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // service stopped: the saving stays pending and will be replayed after the start
+      LOG.warn("Saving of " + nodePath + " (" + save.getKey() + ") postponed until the next start: document locked");
+    }
+  }
+
+  /**
+   * Resume the saving parked until unlocking of the document node.
+   *
+   * @param save the saving
+   * @param nodePath the node path
+   */
+  protected void resume(DocumentSave save, String nodePath) {
+    lockWaiters.computeIfPresent(nodePath, (p, queue) -> {
+      queue.remove(save);
+      return queue.isEmpty() ? null : queue;
+    });
+    if (save.parked.compareAndSet(true, false)) {
+      execute(save);
+    }
+  }
+
+  /**
+   * Resume all savings parked until unlocking of given document node.
+   *
+   * @param nodePath the node path
+   */
+  protected void unlocked(String nodePath) {
+    ConcurrentLinkedQueue<DocumentSave> queue = lockWaiters.remove(nodePath);
+    if (queue != null) {
+      for (DocumentSave save : queue) {
+        if (save.parked.compareAndSet(true, false)) {
+          execute(save);
         }
-      } while (lock == null && attempts <= LOCK_WAIT_ATTEMTS);
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      throw new OnlyofficeEditorException("Error waiting for lock of " + nodePath(config.getWorkspace(), config.getPath()), e);
+      }
     }
-    return lock;
   }
 
   /**
@@ -1261,6 +3440,10 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    * @return the lang can be <code>null</code> if user has no profile or language in it or user profile error
    */
   protected String getUserLang(String userId) {
+    String cachedLang = langCache.get(userId);
+    if (cachedLang != null) {
+      return cachedLang.length() > 0 ? cachedLang : null;
+    }
     UserProfileHandler hanlder = organization.getUserProfileHandler();
     try {
       UserProfile userProfile = hanlder.findUserProfileByName(userId);
@@ -1276,8 +3459,10 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
         } else {
           lang = null;
         }
+        langCache.put(userId, lang != null ? lang : EMPTY_TEXT);
         return lang;
       } else {
+        langCache.put(userId, EMPTY_TEXT);
         return null;
       }
     } catch (Exception e) {
@@ -1431,19 +3616,139 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
   protected Identity userIdentity(String userId) {
     Identity userIdentity = identityRegistry.getIdentity(userId);
     if (userIdentity == null) {
-      // We create user identity by authenticator, but not register it in the registry
-      try {
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("User identity not registered, trying to create it for: " + userId);
+      userIdentity = identityCache.get(userId);
+      if (userIdentity == null) {
+        // We create user identity by authenticator, but not register it in the registry
+        try {
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("User identity not registered, trying to create it for: " + userId);
+          }
+          userIdentity = authenticator.createIdentity(userId);
+          if (userIdentity != null) {
+            // resolving memberships is costly, keep the identity until they change
+            identityCache.put(userId, userIdentity);
+          }
+        } catch (Exception e) {
+          LOG.warn("Failed to create user identity: " + userId, e);
         }
-        userIdentity = authenticator.createIdentity(userId);
-      } catch (Exception e) {
-        LOG.warn("Failed to create user identity: " + userId, e);
       }
     }
     return userIdentity;
   }
 
+  /**
+   * Run a task on behalf of given user: with the user conversation state and JCR session provider. Actual
+   * state and session provider of current thread will be restored after the task.
+   *
+   * @param <T> the result type
+   * @param userId the user id
+   * @param task the task
+   * @return the result of the task
+   * @throws OnlyofficeEditorException if user identity not found or the task failed
+   * @throws RepositoryException the repository exception
+   */
+  protected <T> T runAs(String userId, UserTask<T> task) throws OnlyofficeEditorException, RepositoryException {
+    Identity userIdentity = userIdentity(userId);
+    if (userIdentity == null) {
+      LOG.warn("User identity not found " + userId);
+      throw new OnlyofficeEditorException("User identity not found " + userId);
+    }
+    // remember real context state and session provider to restore them at the end
+    ConversationState contextState = ConversationState.getCurrent();
+    SessionProvider contextProvider = sessionProviders.getSessionProvider(null);
+    try {
+      ConversationState state = new ConversationState(userIdentity);
+      // Keep subject as attribute in ConversationState.
+      state.setAttribute(ConversationState.SUBJECT, userIdentity.getSubject());
+      ConversationState.setCurrent(state);
+      SessionProvider userProvider = new SessionProvider(state);
+      sessionProviders.setSessionProvider(null, userProvider);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug(">>> run under user " + userIdentity.getUserId());
+      }
+      return task.run();
+    } finally {
+      // restore context env
+      ConversationState.setCurrent(contextState);
+      sessionProviders.setSessionProvider(null, contextProvider);
+    }
+  }
+
+  /**
+   * Parse an IP address literal. This method doesn't use DNS: if given text isn't an IP address, it returns
+   * <code>null</code>.
+   *
+   * @param text the text
+   * @return the inet address or <code>null</code>
+   */
+  protected InetAddress ipAddress(String text) {
+    if (IPV4_PATTERN.matcher(text).matches() || IPV6_PATTERN.matcher(text).matches()) {
+      try {
+        return InetAddress.getByName(text); // it's a literal, no DNS lookup here
+      } catch (UnknownHostException e) {
+        // not an IP address
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Parse an IP address or network in CIDR notation (e.g. 192.168.1.0/24).
+   *
+   * @param text the text
+   * @return the address range or <code>null</code> if given text isn't an IP address or network
+   * @throws ConfigurationException if network prefix isn't valid
+   */
+  protected AddressRange addressRange(String text) throws ConfigurationException {
+    String addressText;
+    String prefixText;
+    int prefixIndex = text.indexOf('/');
+    if (prefixIndex > 0) {
+      addressText = text.substring(0, prefixIndex);
+      prefixText = text.substring(prefixIndex + 1);
+    } else {
+      addressText = text;
+      prefixText = null;
+    }
+    InetAddress address = ipAddress(addressText);
+    if (address != null) {
+      byte[] network = address.getAddress();
+      int prefix = network.length * 8;
+      if (prefixText != null) {
+        try {
+          prefix = Integer.parseInt(prefixText.trim());
+        } catch (NumberFormatException e) {
+          throw new ConfigurationException("Wrong network prefix in " + CONFIG_DS_ALLOWEDHOSTS + ": " + text);
+        }
+        if (prefix < 0 || prefix > network.length * 8) {
+          throw new ConfigurationException("Wrong network prefix length in " + CONFIG_DS_ALLOWEDHOSTS + ": " + text);
+        }
+      }
+      return new AddressRange(network, prefix);
+    }
+    return null;
+  }
+
+  /**
+   * Integer value of the configuration parameter.
+   *
+   * @param name the parameter name
+   * @param defaultValue the default value
+   * @return the int
+   * @throws ConfigurationException if value isn't a valid integer
+   */
+  protected int intConfig(String name, int defaultValue) throws ConfigurationException {
+    String value = config.get(name);
+    if (value != null && (value = value.trim()).length() > 0) {
+      try {
+        return Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+        throw new ConfigurationException("Configuration of " + name + " should be a number: " + value);
+      }
+    }
+    return defaultValue;
+  }
+
   /**
    * Get lower case copy of the given string.
    *
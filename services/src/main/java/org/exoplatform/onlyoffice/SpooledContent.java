@@ -0,0 +1,320 @@
+
+/*
+ * Copyright (C) 2003-2018 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Content of edited document downloaded from Document Server to a local spool before saving it in JCR. Small
+ * content of known length will be kept in a direct (off-heap) buffer, other content goes to a temporary
+ * file readable only by its owner. While reading the content its size will be checked against expected length
+ * and SHA-256 digest calculated for diagnostic. Content of unknown length cannot be checked and will be not
+ * verified (see {@link #isVerified()}).<br>
+ * 
+ * Created by The eXo Platform SAS.
+ * 
+ * @version $Id: SpooledContent.java 00000 Oct 16, 2026 $
+ */
+public class SpooledContent implements Closeable {
+
+  /** The Constant BUFFER_SIZE. */
+  protected static final int                      BUFFER_SIZE      = 64 * 1024;
+
+  /** The Constant DIGEST_ALGORITHM. */
+  protected static final String                   DIGEST_ALGORITHM = "SHA-256";
+
+  /** The Constant FILE_PERMISSIONS: spool files are private to the server user. */
+  protected static final Set<PosixFilePermission> FILE_PERMISSIONS =
+                                                                   EnumSet.of(PosixFilePermission.OWNER_READ,
+                                                                              PosixFilePermission.OWNER_WRITE);
+
+  /**
+   * Input stream reading a byte buffer.
+   */
+  protected static class BufferInputStream extends InputStream {
+
+    /** The buffer. */
+    protected final ByteBuffer buffer;
+
+    /**
+     * Instantiates a new buffer input stream.
+     *
+     * @param buffer the buffer
+     */
+    protected BufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(len, buffer.remaining());
+      buffer.get(b, off, count);
+      return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long skip(long n) throws IOException {
+      int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + count);
+      return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int available() throws IOException {
+      return buffer.remaining();
+    }
+  }
+
+  /**
+   * Spool given data stream. The data stream will not be closed by this method.
+   *
+   * @param data the data stream
+   * @param expectedLength the expected length of the data, <code>-1</code> if not known
+   * @param memoryThreshold the maximum length of the data that will be kept in memory
+   * @return the spooled content
+   * @throws IOException Signals that an I/O exception has occurred, including the case when actual data
+   *           length doesn't match the expected one
+   */
+  public static SpooledContent spool(InputStream data, long expectedLength, long memoryThreshold) throws IOException {
+    MessageDigest digest = newDigest();
+    boolean verified = expectedLength >= 0;
+    byte[] buff = new byte[BUFFER_SIZE];
+    long length = 0;
+    if (expectedLength >= 0 && expectedLength <= memoryThreshold) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect((int) expectedLength);
+      int r;
+      while ((r = data.read(buff)) != -1) {
+        length += r;
+        if (length > expectedLength) {
+          throw new IOException("Content longer than expected " + expectedLength + " bytes");
+        }
+        digest.update(buff, 0, r);
+        buffer.put(buff, 0, r);
+      }
+      checkLength(length, expectedLength);
+      buffer.flip();
+      return new SpooledContent(buffer, null, length, digest.digest(), verified);
+    } else {
+      File file = createFile();
+      boolean done = false;
+      try {
+        OutputStream out = new FileOutputStream(file);
+        try {
+          int r;
+          while ((r = data.read(buff)) != -1) {
+            length += r;
+            digest.update(buff, 0, r);
+            out.write(buff, 0, r);
+          }
+        } finally {
+          out.close();
+        }
+        checkLength(length, expectedLength);
+        done = true;
+        return new SpooledContent(null, file, length, digest.digest(), verified);
+      } finally {
+        if (!done) {
+          file.delete();
+        }
+      }
+    }
+  }
+
+  /**
+   * Create a temporary file for the content, it will be readable and writable only by its owner.
+   *
+   * @return the file
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected static File createFile() throws IOException {
+    if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+      return Files.createTempFile("onlyoffice-", ".spool", PosixFilePermissions.asFileAttribute(FILE_PERMISSIONS)).toFile();
+    } else {
+      // not POSIX file system (e.g. Windows): revoke access of others where it's possible
+      File file = Files.createTempFile("onlyoffice-", ".spool").toFile();
+      file.setReadable(false, false);
+      file.setWritable(false, false);
+      file.setReadable(true, true);
+      file.setWritable(true, true);
+      return file;
+    }
+  }
+
+  /**
+   * Create a new message digest of the content.
+   *
+   * @return the message digest
+   * @throws IOException if the digest algorithm not available
+   */
+  protected static MessageDigest newDigest() throws IOException {
+    try {
+      return MessageDigest.getInstance(DIGEST_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException("Digest algorithm not available: " + DIGEST_ALGORITHM, e);
+    }
+  }
+
+  /**
+   * Check actual length of the data against expected one.
+   *
+   * @param length the length
+   * @param expectedLength the expected length, <code>-1</code> if not known
+   * @throws IOException if lengths don't match
+   */
+  protected static void checkLength(long length, long expectedLength) throws IOException {
+    if (expectedLength >= 0 && length != expectedLength) {
+      throw new IOException("Content length " + length + " doesn't match expected " + expectedLength + " bytes");
+    }
+  }
+
+  /** The buffer, if content kept in memory. */
+  protected final ByteBuffer buffer;
+
+  /** The file, if content spooled on disk. */
+  protected final File       file;
+
+  /** The length. */
+  protected final long       length;
+
+  /** The digest. */
+  protected final byte[]     digest;
+
+  /** The verified flag: length of the content was checked against expected one. */
+  protected final boolean    verified;
+
+  /**
+   * Instantiates a new spooled content.
+   *
+   * @param buffer the buffer
+   * @param file the file
+   * @param length the length
+   * @param digest the digest
+   * @param verified the verified flag
+   */
+  protected SpooledContent(ByteBuffer buffer, File file, long length, byte[] digest, boolean verified) {
+    this.buffer = buffer;
+    this.file = file;
+    this.length = length;
+    this.digest = digest;
+    this.verified = verified;
+  }
+
+  /**
+   * Gets the content stream. Each call returns a new stream reading the content from its beginning.
+   *
+   * @return the stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public InputStream getStream() throws IOException {
+    if (buffer != null) {
+      return new BufferInputStream(buffer.duplicate());
+    } else {
+      return new FileInputStream(file);
+    }
+  }
+
+  /**
+   * Gets the content length.
+   *
+   * @return the length
+   */
+  public long getLength() {
+    return length;
+  }
+
+  /**
+   * Gets the SHA-256 digest of the content in hex.
+   *
+   * @return the digest
+   */
+  public String getDigest() {
+    StringBuilder hex = new StringBuilder(digest.length * 2);
+    for (byte b : digest) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * Checks if length of the content was verified against expected one (it was known when spooled).
+   *
+   * @return true, if is verified
+   */
+  public boolean isVerified() {
+    return verified;
+  }
+
+  /**
+   * Checks if the content kept in memory.
+   *
+   * @return true, if is in memory
+   */
+  public boolean isInMemory() {
+    return buffer != null;
+  }
+
+  /**
+   * Release the content: delete its spool file if it was created.
+   */
+  @Override
+  public void close() {
+    if (file != null) {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,133 @@
+
+/*
+ * Copyright (C) 2003-2018 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.exoplatform.onlyoffice.DocumentContent;
+
+/**
+ * Streaming of document content (or its range) to REST response. The content will be transferred by its
+ * storage if it supports that (see {@link DocumentContent#transfer(OutputStream, long, long)}), e.g. from a
+ * file of JCR value storage by its file channel, without reading it in the Java heap. Otherwise the content
+ * stream will be copied through a buffer, skipping bytes before the range, and closed after the writing.<br>
+ * 
+ * Created by The eXo Platform SAS.
+ * 
+ * @version $Id: DocumentContentOutput.java 00000 Oct 16, 2026 $
+ */
+public class DocumentContentOutput implements StreamingOutput {
+
+  /** The Constant BUFFER_SIZE. */
+  protected static final int  BUFFER_SIZE = 64 * 1024;
+
+  /** The content. */
+  protected final DocumentContent content;
+
+  /** The offset. */
+  protected final long            offset;
+
+  /** The length, <code>-1</code> means till end of the data. */
+  protected final long            length;
+
+  /**
+   * Instantiates a new document content output for whole content.
+   *
+   * @param content the content
+   */
+  public DocumentContentOutput(DocumentContent content) {
+    this(content, 0, -1);
+  }
+
+  /**
+   * Instantiates a new document content output for a range of content.
+   *
+   * @param content the content
+   * @param offset the offset
+   * @param length the length, <code>-1</code> means till end of the data
+   */
+  public DocumentContentOutput(DocumentContent content, long offset, long length) {
+    this.content = content;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(OutputStream output) throws IOException, WebApplicationException {
+    if (content.transfer(output, offset, length) < 0) {
+      copy(output);
+    }
+    output.flush();
+  }
+
+  /**
+   * Copy the content stream to given output.
+   *
+   * @param output the output
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected void copy(OutputStream output) throws IOException {
+    InputStream data = content.getData();
+    try {
+      skip(data);
+      byte[] buffer = new byte[BUFFER_SIZE];
+      long remaining = length >= 0 ? length : Long.MAX_VALUE;
+      while (remaining > 0) {
+        int read = data.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+        if (read < 0) {
+          break;
+        }
+        output.write(buffer, 0, read);
+        remaining -= read;
+      }
+    } finally {
+      data.close();
+    }
+  }
+
+  /**
+   * Skip the data to the offset.
+   *
+   * @param data the data
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected void skip(InputStream data) throws IOException {
+    long skip = offset;
+    while (skip > 0) {
+      long skipped = data.skip(skip);
+      if (skipped <= 0) {
+        // skip() may not move on some streams, read the data then
+        if (data.read() < 0) {
+          throw new IOException("Content ended before range offset " + offset);
+        }
+        skipped = 1;
+      }
+      skip -= skipped;
+    }
+  }
+}
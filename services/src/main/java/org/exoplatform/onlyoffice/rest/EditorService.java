@@ -20,41 +20,49 @@ package org.exoplatform.onlyoffice.rest;
 
 import java.net.InetAddress;
 import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.security.RolesAllowed;
 import javax.jcr.RepositoryException;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.FormParam;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriInfo;
 
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
 import org.exoplatform.onlyoffice.BadParameterException;
 import org.exoplatform.onlyoffice.ChangeState;
 import org.exoplatform.onlyoffice.Config;
 import org.exoplatform.onlyoffice.DocumentContent;
 import org.exoplatform.onlyoffice.DocumentStatus;
+import org.exoplatform.onlyoffice.EditorMetrics;
 import org.exoplatform.onlyoffice.OnlyofficeEditorException;
+import org.exoplatform.onlyoffice.OnlyofficeEditorListener;
 import org.exoplatform.onlyoffice.OnlyofficeEditorService;
 import org.exoplatform.onlyoffice.webui.OnlyofficeEditorUIService;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.services.rest.resource.ResourceContainer;
 import org.exoplatform.services.security.ConversationState;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 /**
@@ -69,7 +77,170 @@ import org.json.simple.parser.ParseException;
 public class EditorService implements ResourceContainer {
 
   /** The Constant LOG. */
-  protected static final Log LOG = ExoLogger.getLogger(EditorService.class);
+  protected static final Log  LOG                             = ExoLogger.getLogger(EditorService.class);
+
+  /** Configuration of client host lookup (reverse DNS), if <code>false</code> only IP will be checked. */
+  public static final String  CONFIG_HOST_LOOKUP              = "host-lookup";
+
+  /** Configuration of time to live (in seconds) of resolved client host names. */
+  public static final String  CONFIG_HOST_CACHE_TTL           = "host-cache-ttl";
+
+  /** Configuration of time to live (in seconds) of failed client host lookups. */
+  public static final String  CONFIG_HOST_CACHE_NEGATIVE_TTL  = "host-cache-negative-ttl";
+
+  /** The Constant HOST_CACHE_TTL_DEFAULT (1 hour). */
+  protected static final long HOST_CACHE_TTL_DEFAULT          = 3600;
+
+  /** The Constant HOST_CACHE_NEGATIVE_TTL_DEFAULT (5 minutes). */
+  protected static final long HOST_CACHE_NEGATIVE_TTL_DEFAULT = 300;
+
+  /** The Constant HOST_CACHE_SIZE. */
+  protected static final int  HOST_CACHE_SIZE                 = 1000;
+
+  /** Configuration of maximum time (in seconds) a client can wait for editor state change. */
+  public static final String  CONFIG_STATE_WAIT_TIMEOUT       = "state-wait-timeout";
+
+  /** Configuration of maximum number of clients waiting for editor state change at the same time. */
+  public static final String  CONFIG_STATE_WAIT_CLIENTS       = "state-wait-clients";
+
+  /** The Constant STATE_WAIT_TIMEOUT_DEFAULT (in seconds). */
+  protected static final long STATE_WAIT_TIMEOUT_DEFAULT      = 25;
+
+  /**
+   * The Constant STATE_WAIT_CLIENTS_DEFAULT. Each waiting client holds a thread of the HTTP connector, it's
+   * a tenth of Tomcat's default pool (maxThreads is 200).
+   */
+  protected static final long STATE_WAIT_CLIENTS_DEFAULT      = 20;
+
+  /**
+   * Period (in milliseconds) to recheck editor state while waiting for its change: the state can be changed
+   * on another cluster node without local notification.
+   */
+  protected static final long STATE_WAIT_RECHECK              = 5000;
+
+  /**
+   * Host name resolved by client IP.
+   */
+  static class ResolvedHost {
+
+    /** The host name, <code>null</code> if cannot be resolved. */
+    final String host;
+
+    /** The expiration time. */
+    final long   expires;
+
+    /**
+     * Instantiates a new resolved host.
+     *
+     * @param host the host
+     * @param expires the expires
+     */
+    ResolvedHost(String host, long expires) {
+      this.host = host;
+      this.expires = expires;
+    }
+  }
+
+  /**
+   * Clients waiting for editor state change of a document.
+   */
+  static class StateWaiter {
+
+    /** The number of waiting clients. */
+    int  waiters;
+
+    /** The changes counter. */
+    long changes;
+
+    /**
+     * Notify waiting clients about a change.
+     */
+    synchronized void changed() {
+      changes++;
+      notifyAll();
+    }
+
+    /**
+     * Wait for a change after given one.
+     *
+     * @param seen the changes counter already seen by the caller
+     * @param timeout the timeout in milliseconds
+     * @return the actual changes counter
+     * @throws InterruptedException the interrupted exception
+     */
+    synchronized long await(long seen, long timeout) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + timeout;
+      long remaining = timeout;
+      while (changes == seen && remaining > 0) {
+        wait(remaining);
+        remaining = deadline - System.currentTimeMillis();
+      }
+      return changes;
+    }
+  }
+
+  /**
+   * Notifies clients waiting for editor state on its changes.
+   */
+  protected class StateListener implements OnlyofficeEditorListener {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCreate(Config config) {
+      // nothing
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onGet(Config config) {
+      // nothing
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onJoined(Config config) {
+      stateChanged(config.getDocument().getKey());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onLeaved(Config config) {
+      stateChanged(config.getDocument().getKey());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onSaved(Config config) {
+      stateChanged(config.getDocument().getKey());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onError(Config config) {
+      stateChanged(config.getDocument().getKey());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isSynchronous() {
+      // it only wakes up waiting clients, no need in a dedicated thread
+      return true;
+    }
+  }
 
   /**
    * Response builder for connect and state.
@@ -139,18 +310,82 @@ public class EditorService implements ResourceContainer {
   /** The editors UI. */
   protected final OnlyofficeEditorUIService editorsUI;
 
+  /** The editor metrics. */
+  protected final EditorMetrics             metrics;
+
   /** The initiated. */
-  protected final Map<UUID, Config>         initiated = new ConcurrentHashMap<UUID, Config>();
+  protected final Map<UUID, Config>         initiated     = new ConcurrentHashMap<UUID, Config>();
+
+  /**
+   * Client host names resolved by IP (reverse DNS), mapped by IP. It's not expected a lot of clients here
+   * (it's Document Server hosts or not allowed ones), least recently used hosts will be evicted.
+   */
+  protected final Map<String, ResolvedHost> resolvedHosts;
+
+  /** The host lookup enabled. */
+  protected final boolean                   hostLookup;
+
+  /** The host cache TTL (in milliseconds). */
+  protected final long                      hostCacheTTL;
+
+  /** The host cache negative TTL (in milliseconds). */
+  protected final long                      hostCacheNegativeTTL;
+
+  /** Clients waiting for editor state change, mapped by document key. */
+  protected final Map<String, StateWaiter>  stateWaiters  = new ConcurrentHashMap<String, StateWaiter>();
+
+  /** The number of clients waiting for editor state change. */
+  protected final AtomicInteger             stateClients  = new AtomicInteger();
+
+  /** The maximum time (in milliseconds) of waiting for editor state change. */
+  protected final long                      stateWaitTimeout;
+
+  /** The maximum number of clients waiting for editor state change. */
+  protected final int                       stateWaitClients;
 
   /**
    * REST cloudDrives uses {@link OnlyofficeEditorService} for actual job.
    *
    * @param editors the editors
    * @param editorsUI the editors UI
+   * @param metrics the editor metrics
+   * @param params the params, can be <code>null</code>
    */
-  public EditorService(OnlyofficeEditorService editors, OnlyofficeEditorUIService editorsUI) {
+  public EditorService(OnlyofficeEditorService editors,
+                       OnlyofficeEditorUIService editorsUI,
+                       EditorMetrics metrics,
+                       InitParams params) {
     this.editors = editors;
     this.editorsUI = editorsUI;
+    this.metrics = metrics;
+
+    String hostLookup = valueParam(params, CONFIG_HOST_LOOKUP);
+    this.hostLookup = hostLookup != null ? Boolean.parseBoolean(hostLookup) : true;
+    this.hostCacheTTL = longParam(params, CONFIG_HOST_CACHE_TTL, HOST_CACHE_TTL_DEFAULT) * 1000;
+    this.hostCacheNegativeTTL = longParam(params, CONFIG_HOST_CACHE_NEGATIVE_TTL, HOST_CACHE_NEGATIVE_TTL_DEFAULT) * 1000;
+    this.resolvedHosts = Collections.synchronizedMap(new LinkedHashMap<String, ResolvedHost>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, ResolvedHost> eldest) {
+        return size() > HOST_CACHE_SIZE;
+      }
+    });
+    this.stateWaitTimeout = longParam(params, CONFIG_STATE_WAIT_TIMEOUT, STATE_WAIT_TIMEOUT_DEFAULT) * 1000;
+    this.stateWaitClients = (int) longParam(params, CONFIG_STATE_WAIT_CLIENTS, STATE_WAIT_CLIENTS_DEFAULT);
+
+    editors.addListener(new StateListener());
+  }
+
+  /**
+   * REST cloudDrives uses {@link OnlyofficeEditorService} for actual job.
+   *
+   * @param editors the editors
+   * @param editorsUI the editors UI
+   * @param metrics the editor metrics
+   */
+  public EditorService(OnlyofficeEditorService editors, OnlyofficeEditorUIService editorsUI, EditorMetrics metrics) {
+    this(editors, editorsUI, metrics, null);
   }
 
   /**
@@ -174,39 +409,19 @@ public class EditorService implements ResourceContainer {
                          @PathParam("key") String key,
                          String statusText) {
 
-    String clientHost = getClientHost(request);
+    long start = System.nanoTime();
     String clientIp = getClientIpAddr(request);
 
     if (LOG.isDebugEnabled()) {
-      LOG.debug("> Onlyoffice document status: " + userId + "@" + key + " " + statusText + " from " + clientHost + "(" + clientIp
-          + ")");
+      LOG.debug("> Onlyoffice document status: " + userId + "@" + key + " " + statusText + " from " + clientIp);
     }
 
     EditorResponse resp = new EditorResponse();
-    if (editors.canDownloadBy(clientHost) || editors.canDownloadBy(clientIp)) {
+    if (isDocumentServer(request, clientIp)) {
       try {
-        DocumentStatus status = new DocumentStatus();
-
-        JSONParser parser = new JSONParser();
-        Object obj = parser.parse(statusText);
-        JSONObject jsonObj = (JSONObject) obj;
-        String statusKey = (String) jsonObj.get("key");
-        long statusCode = (long) jsonObj.get("status");
-        String statusUrl = (String) jsonObj.get("url");
-        // Oct 2017: When Document server calls with status 4 (user closed w/o modification), the users array
-        // will be null
-        JSONArray statusUsersArray = (JSONArray) jsonObj.get("users");
-        @SuppressWarnings("unchecked")
-        String[] statusUsers = statusUsersArray != null ? (String[]) statusUsersArray.toArray(new String[statusUsersArray.size()])
-                                                        : new String[0];
-
         if (key != null && key.length() > 0) {
           if (userId != null && userId.length() > 0) {
-            status.setKey(statusKey != null && statusKey.length() > 0 ? statusKey : key);
-            status.setStatus(statusCode);
-            status.setUrl(statusUrl);
-            status.setUsers(statusUsers);
-
+            DocumentStatus status = DocumentStatus.parse(statusText, key);
             try {
               editors.updateDocument(userId, status);
               resp.entity("{\"error\": 0}");
@@ -235,10 +450,12 @@ public class EditorService implements ResourceContainer {
         resp.error("JSON parse error: " + e.getMessage()).status(Status.BAD_REQUEST);
       }
     } else {
-      LOG.warn("Attempt to update status by not allowed host: " + clientHost + "(" + clientIp + ")");
+      LOG.warn("Attempt to update status by not allowed host: " + getClientHost(request) + "(" + clientIp + ")");
       resp.error("Not a document server").status(Status.UNAUTHORIZED);
     }
-    return resp.build();
+    Response response = resp.build();
+    metrics.statusResponse(response.getStatus(), start);
+    return response;
   }
 
   /**
@@ -258,20 +475,19 @@ public class EditorService implements ResourceContainer {
                           @Context HttpServletRequest request,
                           @PathParam("userId") String userId,
                           @PathParam("key") String key) {
-    String clientHost = getClientHost(request);
     String clientIp = getClientIpAddr(request);
 
     if (LOG.isDebugEnabled()) {
-      LOG.debug("> Onlyoffice document content: " + userId + "@" + key + " to " + clientHost + "(" + clientIp + ")");
+      LOG.debug("> Onlyoffice document content: " + userId + "@" + key + " to " + clientIp);
     }
 
     EditorResponse resp = new EditorResponse();
-    if (editors.canDownloadBy(clientHost) || editors.canDownloadBy(clientIp)) {
+    if (isDocumentServer(request, clientIp)) {
       if (key != null && key.length() > 0) {
         try {
           if (userId != null && userId.length() > 0) {
             DocumentContent content = editors.getContent(userId, key);
-            resp.entity(content.getData()).type(content.getType()).ok();
+            content(resp, request, content);
           } else {
             LOG.error("Error downloading content. User identity not provided");
             resp.error("User not provided").status(Status.BAD_REQUEST);
@@ -293,12 +509,117 @@ public class EditorService implements ResourceContainer {
         resp.status(Status.BAD_REQUEST).error("Null or empty file key.");
       }
     } else {
-      LOG.warn("Attempt to download content by not allowed host: " + clientHost + "(" + clientIp + ")");
+      LOG.warn("Attempt to download content by not allowed host: " + getClientHost(request) + "(" + clientIp + ")");
       resp.error("Not a document server").status(Status.UNAUTHORIZED);
     }
     return resp.build();
   }
 
+  /**
+   * Fill the response with document content. If the content length is known, the response will have
+   * Content-Length header and it will support a single range requested in Range header (for resuming partial
+   * downloads).
+   *
+   * @param resp the response
+   * @param request the request
+   * @param content the content
+   */
+  protected void content(EditorResponse resp, HttpServletRequest request, DocumentContent content) {
+    resp.type(content.getType());
+    String etag = contentETag(content);
+    if (etag != null) {
+      resp.addHeader("ETag", etag);
+    }
+    long length = content.getLength();
+    if (length >= 0) {
+      resp.addHeader("Accept-Ranges", "bytes");
+      String rangeHeader = request.getHeader("Range");
+      if (rangeHeader != null) {
+        // If-Range lets send a range only if the content wasn't changed, otherwise whole content will be sent
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null || ifRange.equals(etag)) {
+          long[] range = contentRange(rangeHeader, length);
+          if (range != null) {
+            if (range.length == 0) {
+              resp.addHeader("Content-Range", "bytes */" + length);
+              resp.status(416); // Requested Range Not Satisfiable
+            } else {
+              long rangeLength = range[1] - range[0] + 1;
+              resp.addHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+              resp.addHeader("Content-Length", String.valueOf(rangeLength));
+              resp.entity(new DocumentContentOutput(content, range[0], rangeLength)).status(206); // Partial Content
+            }
+            return;
+          }
+        }
+      }
+      resp.addHeader("Content-Length", String.valueOf(length));
+    }
+    resp.entity(new DocumentContentOutput(content)).ok();
+  }
+
+  /**
+   * ETag of document content based on its last modification date and length.
+   *
+   * @param content the content
+   * @return the ETag or <code>null</code> if content modification date not known
+   */
+  protected String contentETag(DocumentContent content) {
+    if (content.getLastModified() != null) {
+      return new StringBuilder("\"").append(content.getLastModified().getTimeInMillis())
+                                    .append('-')
+                                    .append(content.getLength())
+                                    .append('"')
+                                    .toString();
+    }
+    return null;
+  }
+
+  /**
+   * Parse a single bytes range of Range header (multiple ranges not supported and will be ignored).
+   *
+   * @param range the Range header value
+   * @param length the content length
+   * @return array of first and last byte positions of the range, empty array if the range not satisfiable
+   *         or <code>null</code> if the range should be ignored
+   */
+  protected long[] contentRange(String range, long length) {
+    range = range.trim();
+    if (range.startsWith("bytes=") && range.indexOf(',') < 0) {
+      String spec = range.substring(6).trim();
+      int dash = spec.indexOf('-');
+      if (dash >= 0) {
+        String startText = spec.substring(0, dash).trim();
+        String endText = spec.substring(dash + 1).trim();
+        try {
+          long start, end;
+          if (startText.isEmpty()) {
+            // suffix range: last N bytes
+            long suffix = Long.parseLong(endText);
+            if (suffix <= 0) {
+              return new long[0];
+            }
+            start = Math.max(0, length - suffix);
+            end = length - 1;
+          } else {
+            start = Long.parseLong(startText);
+            end = endText.isEmpty() ? length - 1 : Math.min(Long.parseLong(endText), length - 1);
+            if (endText.length() > 0 && Long.parseLong(endText) < start) {
+              return null; // syntactically invalid range
+            }
+          }
+          if (start >= length) {
+            return new long[0];
+          }
+          return new long[] { start, end };
+        } catch (NumberFormatException e) {
+          // ignore not valid range
+        }
+      }
+    }
+    return null;
+  }
+
   /**
    * Create configuration for Onlyoffice JS.
    *
@@ -373,7 +694,9 @@ public class EditorService implements ResourceContainer {
   }
 
   /**
-   * Read configuration for Onlyoffice JS.
+   * Read configuration for Onlyoffice JS. The configuration has an ETag based on the document state version,
+   * if a client already has actual one (sent its ETag in If-None-Match header) the response will be 304 Not
+   * Modified.
    *
    * @param uriInfo - request with base URI
    * @param request the request
@@ -406,6 +729,17 @@ public class EditorService implements ResourceContainer {
             String username = convo.getIdentity().getUserId();
             Config config = editors.getEditor(username, workspace, path);
             if (config != null) {
+              long version = editors.getStateVersion(config.getDocument().getKey());
+              if (version >= 0) {
+                StringBuilder etag = versionETag('c', version, username);
+                etag.insert(etag.length() - 1, config.isOpen() ? "-o" : (config.isClosing() ? "-c" : ""));
+                String configETag = etag.toString();
+                resp.addHeader("ETag", configETag);
+                resp.addHeader("Cache-Control", "no-cache");
+                if (configETag.equals(request.getHeader("If-None-Match"))) {
+                  return resp.status(Status.NOT_MODIFIED).build();
+                }
+              }
               if (config.getEditorConfig().getLang() == null) {
                 if (request.getLocale() != null) {
                   // If user lang not defined use current request one
@@ -449,18 +783,27 @@ public class EditorService implements ResourceContainer {
   }
 
   /**
-   * Editing document state in local storage.
+   * Editing document state in local storage. The state has an ETag based on the document state version, if a
+   * client already has the state (it sent its ETag in If-None-Match header) and asked to wait, the request will
+   * wait for the state change (long polling) up to given time. If the state not changed the response will be
+   * 304 Not Modified, the state itself will not be read in this case.
    *
    * @param uriInfo - request info
    * @param userId the user id
    * @param key - config key generated when requested editor config
+   * @param ifNoneMatch the ETag of the state already known by the client
+   * @param wait time in seconds to wait for the state change, optional
    * @return {@link Response}
    */
   @GET
   @Path("/state/{userId}/{key}")
   @RolesAllowed("users")
   @Produces(MediaType.APPLICATION_JSON)
-  public Response localState(@Context UriInfo uriInfo, @PathParam("userId") String userId, @PathParam("key") String key) {
+  public Response localState(@Context UriInfo uriInfo,
+                             @PathParam("userId") String userId,
+                             @PathParam("key") String key,
+                             @HeaderParam("If-None-Match") String ifNoneMatch,
+                             @QueryParam("wait") String wait) {
     if (LOG.isDebugEnabled()) {
       LOG.debug("> localState: " + userId + "@" + key);
     }
@@ -469,8 +812,44 @@ public class EditorService implements ResourceContainer {
     if (userId != null) {
       if (key != null) {
         try {
-          ChangeState status = editors.getState(userId, key);
-          resp.entity(status).ok();
+          long version = editors.getStateVersion(key);
+          String etag = version >= 0 ? versionETag('s', version, userId).toString() : null;
+          if (etag != null && etag.equals(ifNoneMatch) && wait != null) {
+            long timeout;
+            try {
+              timeout = Math.min(Long.parseLong(wait) * 1000, stateWaitTimeout);
+            } catch (NumberFormatException e) {
+              timeout = 0;
+            }
+            if (timeout > 0) {
+              Long changed = waitState(key, version, timeout);
+              if (changed != null) {
+                version = changed;
+                etag = version >= 0 ? versionETag('s', version, userId).toString() : null;
+              } else {
+                // too many waiting clients: ask this one to poll later
+                resp.addHeader("Retry-After", String.valueOf(STATE_WAIT_RECHECK / 1000));
+              }
+            }
+          }
+          resp.addHeader("Cache-Control", "no-cache");
+          if (etag != null && etag.equals(ifNoneMatch)) {
+            // state not changed: no need to read it
+            resp.addHeader("ETag", etag);
+            resp.status(Status.NOT_MODIFIED);
+          } else {
+            ChangeState status = editors.getState(userId, key);
+            if (etag == null) {
+              // document not editing: the state is final, its ETag is based on the content
+              etag = stateETag(status);
+            }
+            resp.addHeader("ETag", etag);
+            if (etag.equals(ifNoneMatch)) {
+              resp.status(Status.NOT_MODIFIED);
+            } else {
+              resp.entity(status).ok();
+            }
+          }
         } catch (BadParameterException e) {
           LOG.warn("Bad parameter for getting document state " + userId + "@" + key + ". " + e.getMessage());
           resp.error(e.getMessage()).status(Status.BAD_REQUEST);
@@ -492,6 +871,91 @@ public class EditorService implements ResourceContainer {
     return resp.build();
   }
 
+  /**
+   * Wait for editor state change.
+   *
+   * @param key the key
+   * @param version the state version known by the client
+   * @param timeout the timeout in milliseconds
+   * @return the state version, changed or not, or <code>null</code> if too many clients already waiting
+   */
+  protected Long waitState(String key, long version, long timeout) {
+    if (stateClients.incrementAndGet() > stateWaitClients) {
+      stateClients.decrementAndGet();
+      return null;
+    }
+    StateWaiter waiter = stateWaiters.compute(key, (k, w) -> {
+      if (w == null) {
+        w = new StateWaiter();
+      }
+      w.waiters++;
+      return w;
+    });
+    try {
+      long deadline = System.currentTimeMillis() + timeout;
+      long remaining = timeout;
+      long seen;
+      synchronized (waiter) {
+        seen = waiter.changes;
+      }
+      // changes in other cluster nodes don't notify the waiter, thus recheck the version periodically
+      long actual = editors.getStateVersion(key);
+      while (actual == version && remaining > 0) {
+        seen = waiter.await(seen, Math.min(remaining, STATE_WAIT_RECHECK));
+        actual = editors.getStateVersion(key);
+        remaining = deadline - System.currentTimeMillis();
+      }
+      return actual;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return editors.getStateVersion(key);
+    } finally {
+      stateWaiters.computeIfPresent(key, (k, w) -> --w.waiters > 0 ? w : null);
+      stateClients.decrementAndGet();
+    }
+  }
+
+  /**
+   * Notify clients waiting for editor state of given document.
+   *
+   * @param key the document key
+   */
+  protected void stateChanged(String key) {
+    StateWaiter waiter = stateWaiters.get(key);
+    if (waiter != null) {
+      waiter.changed();
+    }
+  }
+
+  /**
+   * ETag of given document state version for a user.
+   *
+   * @param prefix the prefix of a resource type
+   * @param version the state version
+   * @param userId the user id
+   * @return the builder with quoted ETag
+   */
+  protected StringBuilder versionETag(char prefix, long version, String userId) {
+    return new StringBuilder("\"").append(prefix)
+                                  .append(Long.toHexString(version))
+                                  .append('-')
+                                  .append(Integer.toHexString(userId.hashCode()))
+                                  .append('"');
+  }
+
+  /**
+   * ETag of editor state.
+   *
+   * @param status the status
+   * @return the string
+   */
+  protected String stateETag(ChangeState status) {
+    int hash = status.isSaved() ? 1 : 0;
+    hash = 31 * hash + (status.getError() != null ? status.getError().hashCode() : 0);
+    hash = 31 * hash + Arrays.hashCode(status.getUsers());
+    return new StringBuilder("\"").append(Integer.toHexString(hash)).append('"').toString();
+  }
+
   /**
    * Close UI in OnlyofficeEditorUIService.
    *
@@ -647,23 +1111,102 @@ public class EditorService implements ResourceContainer {
       // And a case of nginx, try X-Real-IP
       clientIp = request.getHeader("X-Real-IP");
     }
-    if (notEmpty(clientIp)) {
+    if (hostLookup && notEmpty(clientIp)) {
+      host = resolveHost(clientIp);
+      if (notEmpty(host)) {
+        return host;
+      }
+    }
+    host = request.getRemoteHost();
+    if (isValidHost(host)) {
+      return host;
+    }
+    return clientIp; // was null - Dec 20, 2017
+  }
+
+  /**
+   * Check if the request was sent by allowed Document Server. The client IP will be checked first, and only
+   * if it isn't allowed, the client host name (can be resolved by reverse DNS) will be checked.
+   *
+   * @param request the request
+   * @param clientIp the client IP, can be <code>null</code>
+   * @return true, if it is allowed Document Server
+   */
+  protected boolean isDocumentServer(HttpServletRequest request, String clientIp) {
+    if (editors.canDownloadBy(clientIp)) {
+      return true;
+    }
+    return editors.canDownloadBy(getClientHost(request));
+  }
+
+  /**
+   * Resolve host name by IP address (reverse DNS). Resolved names are cached, as well as failed lookups but
+   * for shorter time.
+   *
+   * @param clientIp the client IP
+   * @return the host name or <code>null</code> if it cannot be resolved
+   */
+  protected String resolveHost(String clientIp) {
+    long now = System.currentTimeMillis();
+    ResolvedHost resolved = resolvedHosts.get(clientIp);
+    if (resolved == null || resolved.expires < now) {
+      String host;
       try {
         // XXX For this to work, in server.xml, enableLookups="true" and it can be resource consumption call
         // Thus it could be efficient to use the hosts file of the server
         host = InetAddress.getByName(clientIp).getHostName();
-        if (notEmpty(host)) { // host here still may be an IP due to security restriction
-          return host;
+        if (clientIp.equals(host)) {
+          // host here still may be an IP due to security restriction or not found name
+          host = null;
         }
-      } catch (Exception e) {
+      } catch (UnknownHostException e) {
         LOG.warn("Cannot obtain client hostname by its IP " + clientIp + ": " + e.getMessage());
+        host = null;
       }
+      resolved = new ResolvedHost(host, now + (host != null ? hostCacheTTL : hostCacheNegativeTTL));
+      resolvedHosts.put(clientIp, resolved);
     }
-    host = request.getRemoteHost();
-    if (isValidHost(host)) {
-      return host;
+    return resolved.host;
+  }
+
+  /**
+   * Value of the configuration parameter.
+   *
+   * @param params the params, can be <code>null</code>
+   * @param name the name
+   * @return the value or <code>null</code> if not found or empty
+   */
+  protected String valueParam(InitParams params, String name) {
+    if (params != null) {
+      ValueParam param = params.getValueParam(name);
+      if (param != null) {
+        String value = param.getValue();
+        if (value != null && (value = value.trim()).length() > 0) {
+          return value;
+        }
+      }
     }
-    return clientIp; // was null - Dec 20, 2017
+    return null;
+  }
+
+  /**
+   * Long value of the configuration parameter.
+   *
+   * @param params the params, can be <code>null</code>
+   * @param name the name
+   * @param defaultValue the default value
+   * @return the long
+   */
+  protected long longParam(InitParams params, String name, long defaultValue) {
+    String value = valueParam(params, name);
+    if (value != null) {
+      try {
+        return Long.parseLong(value);
+      } catch (NumberFormatException e) {
+        LOG.warn("Configuration of " + name + " should be a number: " + value);
+      }
+    }
+    return defaultValue;
   }
 
   /**
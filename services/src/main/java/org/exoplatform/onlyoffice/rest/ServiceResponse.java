@@ -39,6 +39,9 @@ public class ServiceResponse {
   /** The status. */
   Status              status;
 
+  /** The status code, used for statuses not defined in {@link Status} (e.g. 206 Partial Content). */
+  int                 statusCode;
+
   /** The entity. */
   Object              entity;
 
@@ -59,6 +62,19 @@ public class ServiceResponse {
    */
   ServiceResponse status(Status status) {
     this.status = status;
+    this.statusCode = 0;
+    return this;
+  }
+
+  /**
+   * Status by HTTP code.
+   *
+   * @param statusCode the status code
+   * @return the service response
+   */
+  ServiceResponse status(int statusCode) {
+    this.status = null;
+    this.statusCode = statusCode;
     return this;
   }
 
@@ -69,6 +85,7 @@ public class ServiceResponse {
    */
   ServiceResponse ok() {
     status = Status.OK;
+    statusCode = 0;
     return this;
   }
 
@@ -164,7 +181,7 @@ public class ServiceResponse {
    * @return the response
    */
   Response build() {
-    ResponseBuilder builder = Response.status(status != null ? status : Status.OK);
+    ResponseBuilder builder = statusCode > 0 ? Response.status(statusCode) : Response.status(status != null ? status : Status.OK);
 
     if (entity != null) {
       builder.entity(entity);
@@ -19,7 +19,6 @@
 package org.exoplatform.onlyoffice.webui;
 
 import org.exoplatform.ecm.webui.component.explorer.UIJCRExplorer;
-import org.exoplatform.ecm.webui.component.explorer.UIJcrExplorerContainer;
 import org.exoplatform.ecm.webui.presentation.UIBaseNodePresentation;
 import org.exoplatform.onlyoffice.OnlyofficeEditorException;
 import org.exoplatform.social.webui.activity.UIActivitiesContainer;
@@ -83,6 +82,9 @@ public abstract class AbstractOnlyofficeFilter extends UIExtensionAbstractFilter
         contextContainer = jcrExplorer;
       }
       
+      // UI containers will be searched once per request
+      OnlyofficeFilterContext filterContext = OnlyofficeFilterContext.getCurrent();
+
       // search in ECMS explorer first
       if (contextNode == null) {
         if (jcrExplorer != null) {
@@ -92,15 +94,15 @@ public abstract class AbstractOnlyofficeFilter extends UIExtensionAbstractFilter
         if (contextNode == null) {
           WebuiRequestContext reqContext = WebuiRequestContext.getCurrentInstance();
           UIApplication uiApp = reqContext.getUIApplication();
-          UIJcrExplorerContainer jcrExplorerContainer = uiApp.getChild(UIJcrExplorerContainer.class);
-          if (jcrExplorerContainer != null) {
-            contextContainer = jcrExplorer = jcrExplorerContainer.getChild(UIJCRExplorer.class);
+          UIJCRExplorer appExplorer = filterContext.findExplorer(uiApp);
+          if (appExplorer != null) {
+            contextContainer = jcrExplorer = appExplorer;
             contextNode = jcrExplorer.getCurrentNode();
           }
 
           // case of file preview in Social activity stream
           if (contextNode == null) {
-            UIActivitiesContainer uiActivitiesContainer = uiApp.findFirstComponentOfType(UIActivitiesContainer.class);
+            UIActivitiesContainer uiActivitiesContainer = filterContext.findActivities(uiApp);
             if (uiActivitiesContainer != null) {
               contextContainer = uiActivitiesContainer;
               PopupContainer uiPopupContainer = uiActivitiesContainer.getPopupContainer();
@@ -117,7 +119,17 @@ public abstract class AbstractOnlyofficeFilter extends UIExtensionAbstractFilter
 
       if (contextNode != null) {
         String userId = WebuiRequestContext.getCurrentInstance().getRemoteUser();
-        return accept(userId, contextNode, contextContainer);
+        String key = OnlyofficeFilterContext.decisionKey(getClass(),
+                                                         userId,
+                                                         contextNode.getSession().getWorkspace().getName(),
+                                                         contextNode.getPath(),
+                                                         contextContainer != null ? contextContainer.getClass() : null);
+        Boolean accept = filterContext.getDecision(key);
+        if (accept == null) {
+          accept = accept(userId, contextNode, contextContainer);
+          filterContext.setDecision(key, accept);
+        }
+        return accept;
       }
     }
     return false;
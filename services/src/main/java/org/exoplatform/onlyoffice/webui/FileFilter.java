@@ -21,7 +21,6 @@ package org.exoplatform.onlyoffice.webui;
 
 import org.exoplatform.commons.utils.MimeTypeResolver;
 import org.exoplatform.ecm.webui.component.explorer.UIJCRExplorer;
-import org.exoplatform.ecm.webui.component.explorer.UIJcrExplorerContainer;
 import org.exoplatform.ecm.webui.utils.Utils;
 import org.exoplatform.webui.application.WebuiRequestContext;
 import org.exoplatform.webui.core.UIApplication;
@@ -62,9 +61,8 @@ public class FileFilter extends org.exoplatform.webui.ext.filter.impl.FileFilter
       if (contextNode == null) {
         WebuiRequestContext reqContext = WebuiRequestContext.getCurrentInstance();
         UIApplication uiApp = reqContext.getUIApplication();
-        UIJcrExplorerContainer jcrExplorerContainer = uiApp.getChild(UIJcrExplorerContainer.class);
-        if (jcrExplorerContainer != null) {
-          UIJCRExplorer jcrExplorer = jcrExplorerContainer.getChild(UIJCRExplorer.class);
+        UIJCRExplorer jcrExplorer = OnlyofficeFilterContext.getCurrent().findExplorer(uiApp);
+        if (jcrExplorer != null) {
           contextNode = jcrExplorer.getCurrentNode();
         }
       }
@@ -74,10 +72,17 @@ public class FileFilter extends org.exoplatform.webui.ext.filter.impl.FileFilter
     String mimeType = (String) context.get(Utils.MIME_TYPE);
     if (mimeType == null) {
       if (contextNode != null) {
-        if (contextNode.isNodeType(Utils.NT_FILE)) {
-          mimeType = contextNode.getNode(Utils.JCR_CONTENT).getProperty(Utils.JCR_MIMETYPE).getString();
-        } else {
-          mimeType = new MimeTypeResolver().getMimeType(contextNode.getName());
+        // read the type once per request
+        OnlyofficeFilterContext filterContext = OnlyofficeFilterContext.getCurrent();
+        String nodeKey = contextNode.getSession().getWorkspace().getName() + ":" + contextNode.getPath();
+        mimeType = filterContext.getMimeType(nodeKey);
+        if (mimeType == null) {
+          if (contextNode.isNodeType(Utils.NT_FILE)) {
+            mimeType = contextNode.getNode(Utils.JCR_CONTENT).getProperty(Utils.JCR_MIMETYPE).getString();
+          } else {
+            mimeType = new MimeTypeResolver().getMimeType(contextNode.getName());
+          }
+          filterContext.setMimeType(nodeKey, mimeType);
         }
       } else {
         mimeType = new MimeTypeResolver().getDefaultMimeType();
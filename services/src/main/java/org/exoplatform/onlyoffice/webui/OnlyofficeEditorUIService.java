@@ -48,19 +48,22 @@ import org.exoplatform.services.log.Log;
 public class OnlyofficeEditorUIService {
 
   /** The Constant CACHE_NAME. */
-  public static final String CACHE_NAME    = "onlyoffice.EditorStateCache".intern();
+  public static final String CACHE_NAME            = "onlyoffice.EditorStateCache".intern();
 
   /** The Constant LOG. */
-  protected static final Log LOG           = ExoLogger.getLogger(OnlyofficeEditorUIService.class);
+  protected static final Log LOG                   = ExoLogger.getLogger(OnlyofficeEditorUIService.class);
 
   /** The Constant STATE_OPENING. */
-  public static final String STATE_OPENING = "opening".intern();
+  public static final String STATE_OPENING         = "opening".intern();
 
   /** The Constant STATE_OPEN. */
-  public static final String STATE_OPEN    = "open".intern();
+  public static final String STATE_OPEN            = "open".intern();
 
   /** The Constant STATE_CLOSING. */
-  public static final String STATE_CLOSING = "closing".intern();
+  public static final String STATE_CLOSING         = "closing".intern();
+
+  /** Number of stripes in locks of user editors cache, should be a power of two. */
+  protected static final int EDITORS_LOCKS_STRIPES = 64;
 
   /**
    * The listener interface for receiving editor events.
@@ -126,13 +129,25 @@ public class OnlyofficeEditorUIService {
       // FYI in case of error browser user will see it thanks to config state obtained from /state
       // (localState) REST endpoint.
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isSynchronous() {
+      // UI states should be actual when the request that changed the editor completes
+      return true;
+    }
   }
 
   /** Cache of open by user editors (its states). */
   protected final ExoCache<String, String> editorsCache;
 
-  /** Lock for updating user editors cache. */
-  protected final ReentrantLock            editorsLock = new ReentrantLock();
+  /**
+   * Striped locks for updating user editors cache. An editor ID selects its lock, thus state changes of
+   * different editors don't wait for each other while the same editor always uses the same lock.
+   */
+  protected final ReentrantLock[]          editorsLocks = new ReentrantLock[EDITORS_LOCKS_STRIPES];
 
   /** The editor service. */
   protected final OnlyofficeEditorService  editorService;
@@ -146,6 +161,9 @@ public class OnlyofficeEditorUIService {
   public OnlyofficeEditorUIService(OnlyofficeEditorService editorService, CacheService cacheService) {
     this.editorService = editorService;
     this.editorsCache = cacheService.getCacheInstance(CACHE_NAME);
+    for (int i = 0; i < editorsLocks.length; i++) {
+      editorsLocks[i] = new ReentrantLock();
+    }
     if (LOG.isDebugEnabled()) {
       editorsCache.addCacheListener(new CacheListener<String, String>() {
 
@@ -190,15 +208,17 @@ public class OnlyofficeEditorUIService {
     String id = editorId(userId, workspace, path);
     String state = editorsCache.get(id);
     if (state == null) {
-      editorsLock.lock();
+      ReentrantLock lock = editorLock(id);
+      lock.lock();
       try {
         state = editorsCache.get(id);
         if (state == null) {
           editorsCache.put(id, STATE_OPENING);
+          OnlyofficeFilterContext.invalidate();
           return true;
         }
       } finally {
-        editorsLock.unlock();
+        lock.unlock();
       }
     }
     return STATE_OPENING.equals(state);
@@ -214,14 +234,18 @@ public class OnlyofficeEditorUIService {
    */
   public boolean opened(String userId, String workspace, String path) {
     String id = editorId(userId, workspace, path);
-    String state = editorsCache.get(id);
-    if (STATE_OPENING.equals(state)) {
-      editorsLock.lock();
+    if (STATE_OPENING.equals(editorsCache.get(id))) {
+      ReentrantLock lock = editorLock(id);
+      lock.lock();
       try {
-        editorsCache.put(id, STATE_OPEN);
-        return true;
+        // check again: the state could be changed while we were waiting for the lock
+        if (STATE_OPENING.equals(editorsCache.get(id))) {
+          editorsCache.put(id, STATE_OPEN);
+          OnlyofficeFilterContext.invalidate();
+          return true;
+        }
       } finally {
-        editorsLock.unlock();
+        lock.unlock();
       }
     }
     return false;
@@ -239,24 +263,25 @@ public class OnlyofficeEditorUIService {
     String id = editorId(userId, workspace, path);
     String state = editorsCache.get(id);
     boolean closing = false;
-    if (STATE_OPEN.equals(state)) {
-      editorsLock.lock();
-      try {
-        editorsCache.put(id, STATE_CLOSING);
-        closing = true;
-      } finally {
-        editorsLock.unlock();
-      }
-    } else if (STATE_OPENING.equals(state)) {
-      // if wasn't OPEN but close requested, ensure document also isn't OPENING
-      editorsLock.lock();
+    if (STATE_OPEN.equals(state) || STATE_OPENING.equals(state)) {
+      ReentrantLock lock = editorLock(id);
+      lock.lock();
       try {
-        closing = STATE_OPENING.equals(editorsCache.remove(id));
+        state = editorsCache.get(id);
+        if (STATE_OPEN.equals(state)) {
+          editorsCache.put(id, STATE_CLOSING);
+          closing = true;
+        } else if (STATE_OPENING.equals(state)) {
+          // if wasn't OPEN but close requested, ensure document also isn't OPENING
+          editorsCache.remove(id);
+          closing = true;
+        }
       } finally {
-        editorsLock.unlock();
+        lock.unlock();
       }
     }
     if (closing) {
+      OnlyofficeFilterContext.invalidate();
       // Set closing state in the editor config: user closed the UI but before actual data saving from the DS,
       // when data will be saved the editor state will be set to closed.
       try {
@@ -281,13 +306,18 @@ public class OnlyofficeEditorUIService {
    */
   public boolean closed(String userId, String workspace, String path) {
     String id = editorId(userId, workspace, path);
-    String state = editorsCache.get(id);
-    if (STATE_CLOSING.equals(state)) {
-      editorsLock.lock();
+    if (STATE_CLOSING.equals(editorsCache.get(id))) {
+      ReentrantLock lock = editorLock(id);
+      lock.lock();
       try {
-        return STATE_CLOSING.equals(editorsCache.remove(id));
+        // remove only if still closing, it could be opened again while we were waiting for the lock
+        if (STATE_CLOSING.equals(editorsCache.get(id))) {
+          editorsCache.remove(id);
+          OnlyofficeFilterContext.invalidate();
+          return true;
+        }
       } finally {
-        editorsLock.unlock();
+        lock.unlock();
       }
     }
     return false;
@@ -303,7 +333,17 @@ public class OnlyofficeEditorUIService {
    */
   public boolean reset(String userId, String workspace, String path) {
     String id = editorId(userId, workspace, path);
-    return editorsCache.remove(id) != null;
+    ReentrantLock lock = editorLock(id);
+    lock.lock();
+    try {
+      if (editorsCache.remove(id) != null) {
+        OnlyofficeFilterContext.invalidate();
+        return true;
+      }
+      return false;
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
@@ -418,4 +458,17 @@ public class OnlyofficeEditorUIService {
     return id.toString();
   }
 
+  /**
+   * Lock for updating user editors cache of given editor. The same lock will be returned for the same editor
+   * ID.
+   *
+   * @param id the editor id
+   * @return the reentrant lock
+   */
+  protected ReentrantLock editorLock(String id) {
+    int hash = id.hashCode();
+    hash ^= (hash >>> 16); // spread higher bits as the stripes use only lower ones
+    return editorsLocks[hash & (editorsLocks.length - 1)];
+  }
+
 }
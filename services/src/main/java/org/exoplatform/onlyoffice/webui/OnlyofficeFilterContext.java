@@ -0,0 +1,188 @@
+
+/*
+ * Copyright (C) 2003-2018 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.webui;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.exoplatform.ecm.webui.component.explorer.UIJCRExplorer;
+import org.exoplatform.ecm.webui.component.explorer.UIJcrExplorerContainer;
+import org.exoplatform.social.webui.activity.UIActivitiesContainer;
+import org.exoplatform.webui.application.WebuiRequestContext;
+import org.exoplatform.webui.core.UIApplication;
+
+/**
+ * Decisions of Onlyoffice UI extension filters memoized for a portal request. The action bar evaluates the
+ * filters several times per rendering, this context lets find UI containers of the context node, read the
+ * document type and check the editor state once per request. Decisions will be forgotten when an editor
+ * state changes in the request (e.g. by open or close action).<br>
+ * 
+ * Created by The eXo Platform SAS.
+ * 
+ * @version $Id: OnlyofficeFilterContext.java 00000 Oct 16, 2026 $
+ */
+public class OnlyofficeFilterContext {
+
+  /** The Constant ATTRIBUTE. */
+  protected static final String        ATTRIBUTE = "OnlyofficeFilterContext".intern();
+
+  /** Filter decisions, mapped by filter, user and node (see {@link #decisionKey}). */
+  protected final Map<String, Boolean> decisions = new HashMap<String, Boolean>();
+
+  /** Mime types of nodes, mapped by workspace and path. */
+  protected final Map<String, String>  mimeTypes = new HashMap<String, String>();
+
+  /** The explorer found in the application. */
+  protected UIJCRExplorer              explorer;
+
+  /** The explorer was searched in the application. */
+  protected boolean                    explorerFound;
+
+  /** The activities container found in the application. */
+  protected UIActivitiesContainer      activities;
+
+  /** The activities container was searched in the application. */
+  protected boolean                    activitiesFound;
+
+  /**
+   * Filter context of current request. A new context will be created for a new request.
+   *
+   * @return the filter context
+   */
+  public static OnlyofficeFilterContext getCurrent() {
+    WebuiRequestContext requestContext = WebuiRequestContext.getCurrentInstance();
+    OnlyofficeFilterContext context = (OnlyofficeFilterContext) requestContext.getAttribute(ATTRIBUTE);
+    if (context == null) {
+      context = new OnlyofficeFilterContext();
+      requestContext.setAttribute(ATTRIBUTE, context);
+    }
+    return context;
+  }
+
+  /**
+   * Forget filter decisions made in current request, if any. Should be called when an editor state changes.
+   */
+  public static void invalidate() {
+    WebuiRequestContext requestContext = WebuiRequestContext.getCurrentInstance();
+    if (requestContext != null) {
+      OnlyofficeFilterContext context = (OnlyofficeFilterContext) requestContext.getAttribute(ATTRIBUTE);
+      if (context != null) {
+        context.decisions.clear();
+      }
+    }
+  }
+
+  /**
+   * Decision key of a filter.
+   *
+   * @param filter the filter class
+   * @param userId the user id
+   * @param workspace the workspace
+   * @param path the node path
+   * @param container the container class, can be <code>null</code>
+   * @return the string
+   */
+  public static String decisionKey(Class<?> filter, String userId, String workspace, String path, Class<?> container) {
+    StringBuilder key = new StringBuilder();
+    key.append(filter.getName());
+    key.append(':');
+    key.append(userId);
+    key.append(':');
+    key.append(workspace);
+    key.append(':');
+    key.append(path);
+    if (container != null) {
+      key.append(':');
+      key.append(container.getSimpleName());
+    }
+    return key.toString();
+  }
+
+  /**
+   * Gets the decision.
+   *
+   * @param key the key
+   * @return the decision or <code>null</code> if not yet made
+   */
+  public Boolean getDecision(String key) {
+    return decisions.get(key);
+  }
+
+  /**
+   * Sets the decision.
+   *
+   * @param key the key
+   * @param accept the accept
+   */
+  public void setDecision(String key, boolean accept) {
+    decisions.put(key, accept);
+  }
+
+  /**
+   * Gets the mime type of a node.
+   *
+   * @param nodeKey the workspace and path of the node
+   * @return the mime type or <code>null</code> if not yet read
+   */
+  public String getMimeType(String nodeKey) {
+    return mimeTypes.get(nodeKey);
+  }
+
+  /**
+   * Sets the mime type of a node.
+   *
+   * @param nodeKey the workspace and path of the node
+   * @param mimeType the mime type
+   */
+  public void setMimeType(String nodeKey, String mimeType) {
+    mimeTypes.put(nodeKey, mimeType);
+  }
+
+  /**
+   * Find ECMS explorer in the application.
+   *
+   * @param uiApp the application
+   * @return the explorer or <code>null</code> if not found
+   */
+  public UIJCRExplorer findExplorer(UIApplication uiApp) {
+    if (!explorerFound) {
+      UIJcrExplorerContainer jcrExplorerContainer = uiApp.getChild(UIJcrExplorerContainer.class);
+      if (jcrExplorerContainer != null) {
+        explorer = jcrExplorerContainer.getChild(UIJCRExplorer.class);
+      }
+      explorerFound = true;
+    }
+    return explorer;
+  }
+
+  /**
+   * Find Social activities container in the application.
+   *
+   * @param uiApp the application
+   * @return the activities container or <code>null</code> if not found
+   */
+  public UIActivitiesContainer findActivities(UIApplication uiApp) {
+    if (!activitiesFound) {
+      activities = uiApp.findFirstComponentOfType(UIActivitiesContainer.class);
+      activitiesFound = true;
+    }
+    return activities;
+  }
+}
@@ -0,0 +1,288 @@
+
+
+/*
+ * Copyright (C) 2003-2018 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.webui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.exoplatform.onlyoffice.OnlyofficeEditorService;
+import org.exoplatform.services.cache.CacheService;
+import org.exoplatform.services.cache.ExoCache;
+
+/**
+ * Tests of user editor states in {@link OnlyofficeEditorUIService} kept in a cache on a concurrent map. The
+ * cache checks each state change against the previous state, thus a change applied over a concurrent one (a
+ * lost transition) will be seen as illegal.<br>
+ * 
+ * Created by The eXo Platform SAS.
+ * 
+ * @version $Id: OnlyofficeEditorUIServiceTest.java 00000 Oct 16, 2026 $
+ */
+public class OnlyofficeEditorUIServiceTest {
+
+  /** The Constant WORKSPACE. */
+  static final String WORKSPACE = "collaboration";
+
+  /** The Constant PATH. */
+  static final String PATH      = "/Users/john/Documents/test.docx";
+
+  /** The Constant THREADS. */
+  static final int    THREADS   = 8;
+
+  /** The Constant USERS. */
+  static final int    USERS     = 4;
+
+  /** The Constant ROUNDS. */
+  static final int    ROUNDS    = 20000;
+
+  /**
+   * Cache on a concurrent map checking transitions of editor states.
+   */
+  static class StateCache implements InvocationHandler {
+
+    /** The entries. */
+    final Map<String, String> entries  = new ConcurrentHashMap<String, String>();
+
+    /** Illegal transitions. */
+    final Queue<String>       illegal  = new ConcurrentLinkedQueue<String>();
+
+    /** Number of editors marked open. */
+    final AtomicInteger       openPuts = new AtomicInteger();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+      case "get":
+        return entries.get(args[0]);
+      case "put":
+        String key = (String) args[0];
+        String state = (String) args[1];
+        String previous = entries.put(key, state);
+        if (!legal(previous, state)) {
+          illegal.add(key + ": " + previous + " -> " + state);
+        }
+        if (OnlyofficeEditorUIService.STATE_OPEN.equals(state)) {
+          openPuts.incrementAndGet();
+        }
+        return null;
+      case "remove":
+        return entries.remove(args[0]);
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      case "equals":
+        return proxy == args[0];
+      default:
+        return defaultValue(method);
+      }
+    }
+
+    /**
+     * Checks if a state can follow the previous one.
+     *
+     * @param previous the previous state, <code>null</code> if no editor
+     * @param state the state
+     * @return true, if legal
+     */
+    boolean legal(String previous, String state) {
+      if (OnlyofficeEditorUIService.STATE_OPENING.equals(state)) {
+        return previous == null;
+      } else if (OnlyofficeEditorUIService.STATE_OPEN.equals(state)) {
+        return OnlyofficeEditorUIService.STATE_OPENING.equals(previous);
+      } else if (OnlyofficeEditorUIService.STATE_CLOSING.equals(state)) {
+        return OnlyofficeEditorUIService.STATE_OPEN.equals(previous);
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Stub of given interface.
+   *
+   * @param <T> the type
+   * @param type the type
+   * @param handler the handler
+   * @return the stub
+   */
+  @SuppressWarnings("unchecked")
+  static <T> T stub(Class<T> type, InvocationHandler handler) {
+    return (T) Proxy.newProxyInstance(OnlyofficeEditorUIServiceTest.class.getClassLoader(), new Class<?>[] { type }, handler);
+  }
+
+  /**
+   * Default value for a method return type.
+   *
+   * @param method the method
+   * @return the object
+   */
+  static Object defaultValue(Method method) {
+    Class<?> type = method.getReturnType();
+    if (type == boolean.class) {
+      return false;
+    } else if (type == int.class) {
+      return 0;
+    } else if (type == long.class) {
+      return 0L;
+    } else if (type.isPrimitive() && type != void.class) {
+      return 0;
+    }
+    return null;
+  }
+
+  /** The cache. */
+  StateCache                 cache;
+
+  /** The service. */
+  OnlyofficeEditorUIService service;
+
+  /**
+   * Creates the service with editors of no one user.
+   */
+  @Before
+  public void setUp() {
+    cache = new StateCache();
+    ExoCache<?, ?> editorsCache = stub(ExoCache.class, cache);
+    CacheService cacheService = stub(CacheService.class, (proxy, method, args) -> {
+      if ("getCacheInstance".equals(method.getName())) {
+        return editorsCache;
+      }
+      return defaultValue(method);
+    });
+    // editor configs don't exist, listeners are not needed
+    OnlyofficeEditorService editorService = stub(OnlyofficeEditorService.class, (proxy, method, args) -> defaultValue(method));
+    service = new OnlyofficeEditorUIService(editorService, cacheService);
+  }
+
+  /**
+   * Editor passes all states in order.
+   */
+  @Test
+  public void testTransitions() {
+    String user = "john";
+    assertTrue(service.canOpen(user, WORKSPACE, PATH));
+    assertFalse(service.opened(user, WORKSPACE, PATH));
+    assertFalse(service.close(user, WORKSPACE, PATH));
+
+    assertTrue(service.open(user, WORKSPACE, PATH));
+    assertTrue(service.isOpening(user, WORKSPACE, PATH));
+    assertFalse(service.closed(user, WORKSPACE, PATH));
+
+    assertTrue(service.opened(user, WORKSPACE, PATH));
+    assertTrue(service.isOpen(user, WORKSPACE, PATH));
+    assertFalse(service.open(user, WORKSPACE, PATH));
+    assertFalse(service.opened(user, WORKSPACE, PATH));
+
+    assertTrue(service.close(user, WORKSPACE, PATH));
+    assertTrue(service.isClosing(user, WORKSPACE, PATH));
+    assertTrue(service.canOpen(user, WORKSPACE, PATH));
+
+    assertTrue(service.closed(user, WORKSPACE, PATH));
+    assertTrue(service.isClosed(user, WORKSPACE, PATH));
+    assertFalse(service.reset(user, WORKSPACE, PATH));
+
+    assertTrue(service.open(user, WORKSPACE, PATH));
+    assertTrue(service.reset(user, WORKSPACE, PATH));
+    assertTrue(service.isClosed(user, WORKSPACE, PATH));
+
+    assertTrue(cache.illegal.isEmpty());
+  }
+
+  /**
+   * Concurrent requests of few users to the same document don't lose state transitions: each state change
+   * follows the state it was made for, and each successful request changed the state.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testConcurrentTransitions() throws Exception {
+    AtomicInteger opened = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<?>> results = new ArrayList<Future<?>>();
+      for (int t = 0; t < THREADS; t++) {
+        results.add(executor.submit(() -> {
+          start.await();
+          ThreadLocalRandom random = ThreadLocalRandom.current();
+          for (int i = 0; i < ROUNDS; i++) {
+            String user = "user" + random.nextInt(USERS);
+            switch (random.nextInt(5)) {
+            case 0:
+              service.open(user, WORKSPACE, PATH);
+              break;
+            case 1:
+              if (service.opened(user, WORKSPACE, PATH)) {
+                opened.incrementAndGet();
+              }
+              break;
+            case 2:
+              service.close(user, WORKSPACE, PATH);
+              break;
+            case 3:
+              service.closed(user, WORKSPACE, PATH);
+              break;
+            default:
+              service.reset(user, WORKSPACE, PATH);
+            }
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> result : results) {
+        result.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals("Illegal transitions: " + cache.illegal, 0, cache.illegal.size());
+    assertEquals(cache.openPuts.get(), opened.get());
+    for (int u = 0; u < USERS; u++) {
+      String user = "user" + u;
+      String state = cache.entries.get(user + ":" + WORKSPACE + ":" + PATH);
+      assertEquals(state == null, service.isClosed(user, WORKSPACE, PATH));
+    }
+  }
+}
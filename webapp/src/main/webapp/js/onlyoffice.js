@@ -299,6 +299,27 @@
 
 		return initRequest(request);
 	};
+
+	/**
+	 * Wait for editor state change (long polling): if state with given ETag not changed in given time (seconds), 
+	 * the server will respond 304 Not Modified (resolved with undefined state).
+	 */
+	var stateWait = function(userId, fileKey, etag, waitSeconds) {
+		var request = $.ajax({
+			type : "GET",
+			url : prefixUrl + "/portal/rest/onlyoffice/editor/state/" + userId + "/" + fileKey,
+			data : {
+				wait : waitSeconds
+			},
+			headers : {
+				"If-None-Match" : etag
+			},
+			cache : false,
+			dataType : "json"
+		});
+
+		return initRequest(request);
+	};
 	
 	var editorClose = function(userId, fileKey) {
 		var request = $.ajax({
@@ -357,28 +378,52 @@
 		var waitClosed = function(config) {
 			var process = $.Deferred();
 			// wait a bit (up to ~60sec) to let Onlyoffice post document status
-			var attempts = 20;
-			function checkClosed() {
-				attempts--;
-				stateGet(config.editorConfig.user.id, config.document.key).done(function(state) {
-					log("Editor state: " + JSON.stringify(state));
-					if (state.saved || state.error) {
+			var deadline = new Date().getTime() + 60000;
+			var userId = config.editorConfig.user.id;
+			var fileKey = config.document.key;
+			var lastState, lastETag;
+			function checkState(state, etag) {
+				log("Editor state: " + JSON.stringify(state));
+				if (state.saved || state.error) {
+					process.resolve(state);
+				} else {
+					var remaining = Math.round((deadline - new Date().getTime()) / 1000);
+					if (remaining > 0 && (state.users.length == 0 || (state.users.length == 1 && state.users[0] == userId))) {
+						log("Continue to wait for editor closing...");
+						lastState = state;
+						lastETag = etag;
+						waitChange(remaining);
+					} else {
+						// resolve as-is, this will cover co-editing when others still edit
 						process.resolve(state);
+					}
+				}
+			}
+			function onError(error) {
+				log("Editor state error: " + JSON.stringify(error));
+				process.reject(error);
+			}
+			function waitChange(remaining) {
+				// the server responds on the state change, or 304 (with no state) when it doesn't change in the wait time
+				stateWait(userId, fileKey, lastETag, remaining).done(function(state, status, textStatus, jqXHR) {
+					if (state) {
+						checkState(state, jqXHR.getResponseHeader("ETag"));
 					} else {
-						if (attempts >= 0 && (state.users.length == 0 || (state.users.length == 1 && state.users[0] == config.editorConfig.user.id))) {
-							log("Continue to wait for editor closing...");
-							setTimeout(checkClosed, 3000);
+						var retryAfter = jqXHR.getResponseHeader("Retry-After");
+						if (retryAfter) {
+							// server too busy to wait: poll it later
+							setTimeout(function() {
+								checkState(lastState, lastETag);
+							}, parseInt(retryAfter) * 1000);
 						} else {
-							// resolve as-is, this will cover co-editing when others still edit
-							process.resolve(state);
+							checkState(lastState, lastETag);
 						}
 					}
-				}).fail(function(error) {
-					log("Editor state error: " + JSON.stringify(error));
-					process.reject(error);
-				});
+				}).fail(onError);
 			}
-			checkClosed();
+			stateGet(userId, fileKey).done(function(state, status, textStatus, jqXHR) {
+				checkState(state, jqXHR.getResponseHeader("ETag"));
+			}).fail(onError);
 			return process.promise();
 		};
 